@@ -0,0 +1,87 @@
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Local data sets for the benchmarks, written by DatasetGenerator. Files are
+ * generated once per size into the directory named by the actors.fixtures
+ * property (target/fixtures by default) and reused by later runs, so every
+ * fork reads the same bytes.
+ */
+final class Fixtures {
+    static final private Path DIRECTORY = Paths.get(System.getProperty("actors.fixtures", "target/fixtures"));
+    static final private long SEED = 150;
+
+    private Fixtures() {
+    }
+
+    /**
+     * @param movies Movies in the data set
+     * @return A bz2 data set, generated if it does not exist yet
+     */
+    static synchronized Path dataSet(int movies) throws IOException {
+        final Path file = DIRECTORY.resolve("movies-" + movies + ".txt.bz2");
+        if (Files.exists(file)) {
+            return file;
+        }
+        new DatasetGenerator(movies, SEED).write(file);
+        return file;
+    }
+
+    /**
+     * The fields a network needs: titles only name the movie nodes of a
+     * bipartite one.
+     */
+    static Set<DataProcessing.Field> fields(boolean bipartite) {
+        return bipartite ? EnumSet.allOf(DataProcessing.Field.class)
+                : EnumSet.of(DataProcessing.Field.YEAR, DataProcessing.Field.CAST);
+    }
+
+    /**
+     * Movies parsed into columns indexed by movie, with interned names, so
+     * construction can be timed without parsing.
+     */
+    static final class Parsed implements DataProcessing.Movies {
+        private String[] titles = new String[1 << 12];
+        private int[] years = new int[1 << 12];
+        private String[][] casts = new String[1 << 12][];
+        private int size = 0;
+
+        @Override
+        public void add(String title, int year, String[] cast) {
+            if (size == casts.length) {
+                titles = Arrays.copyOf(titles, size * 2);
+                years = Arrays.copyOf(years, size * 2);
+                casts = Arrays.copyOf(casts, size * 2);
+            }
+            titles[size] = title;
+            years[size] = year;
+            casts[size++] = cast;
+        }
+
+        void replay(DataProcessing.Movies movies) {
+            for (int i = 0; i < size; ++i) {
+                movies.add(titles[i], years[i], casts[i]);
+            }
+        }
+    }
+
+    static Parsed movies(Path file, boolean bipartite) throws IOException {
+        final Parsed ret = new Parsed();
+        new DataProcessing(file.toString(), fields(bipartite)).acquireData(ret);
+        return ret;
+    }
+
+    /**
+     * Builds the network of a data set through the same path as the
+     * application, minus the snapshot.
+     * @param bipartite Whether actors link through movie nodes
+     */
+    static ActorsNetwork network(int movies, boolean bipartite) throws IOException {
+        final ActorsNetwork.Builder builder = new ActorsNetwork.Builder();
+        new DataProcessing(dataSet(movies).toString(), fields(bipartite)).acquireData(builder);
+        return bipartite ? builder.buildBipartite() : builder.build();
+    }
+}
@@ -0,0 +1,92 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * The operations the benchmarks time, set up on a fixture and exposed as
+ * suppliers. JMH only accepts benchmarks in a named package, which cannot
+ * see the classes of this one, so the benchmarks in the benchmarks package
+ * look these methods up by name and call the suppliers they return.
+ */
+public final class Workloads {
+    static final private int PAIRS = 1024;
+    static final private int HUBS = 32;
+
+    private Workloads() {
+    }
+
+    /**
+     * Parsing the data set, and building the network from parsed casts.
+     */
+    public static Map<String, Supplier<Object>> ingest(int movies, boolean bipartite) throws IOException {
+        final Path dataSet = Fixtures.dataSet(movies);
+        final Fixtures.Parsed parsed = Fixtures.movies(dataSet, bipartite);
+        final Map<String, Supplier<Object>> ret = new LinkedHashMap<>();
+        ret.put("parse", () -> {
+            final ActorsNetwork.Builder builder = new ActorsNetwork.Builder();
+            try {
+                new DataProcessing(dataSet.toString(), Fixtures.fields(bipartite)).acquireData(builder);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return builder;
+        });
+        ret.put("build", () -> {
+            final ActorsNetwork.Builder builder = new ActorsNetwork.Builder();
+            parsed.replay(builder::addMovie);
+            return bipartite ? builder.buildBipartite() : builder.build();
+        });
+        return ret;
+    }
+
+    /**
+     * Path queries between random actors and between hubs, single-source
+     * BFS, and the diameter searches. Random pairs are mostly low-degree
+     * actors; hub pairs are drawn from the best-connected actors, whose
+     * searches touch the most edges per level.
+     */
+    public static Map<String, Supplier<Object>> traversal(int movies, boolean bipartite) throws IOException {
+        final ActorsNetwork g = Fixtures.network(movies, bipartite);
+        final Random random = new Random(15);
+        final int[] hubs = g.degreeStats().top(HUBS);
+        final int[][] randomPairs = new int[PAIRS][], hubPairs = new int[PAIRS][];
+        for (int i = 0; i < PAIRS; ++i) {
+            randomPairs[i] = new int[]{random.nextInt(g.getSize()), random.nextInt(g.getSize())};
+            hubPairs[i] = new int[]{hubs[random.nextInt(hubs.length)], hubs[random.nextInt(hubs.length)]};
+        }
+        final int[] next = new int[1];
+        final Map<String, Supplier<Object>> ret = new LinkedHashMap<>();
+        ret.put("shortestPathRandom", () -> {
+            final int[] pair = randomPairs[next[0]++ & (PAIRS - 1)];
+            return g.shortestPath(pair[0], pair[1]);
+        });
+        ret.put("shortestPathHub", () -> {
+            final int[] pair = hubPairs[next[0]++ & (PAIRS - 1)];
+            return g.shortestPath(pair[0], pair[1]);
+        });
+        ret.put("breadthFirstSearch", () ->
+                g.breadthFirstSearchWithLength(randomPairs[next[0]++ & (PAIRS - 1)][0], CancellationToken.NONE));
+        ret.put("diameter", g::getDiameter);
+        ret.put("exactDiameter", () -> g.getExactDiameter((runs, lower, upper) -> {
+        }));
+        return ret;
+    }
+
+    /**
+     * The DegreeStats pass itself, and the maps derived from a summary that
+     * is already computed.
+     */
+    public static Map<String, Supplier<Object>> stats(int movies, boolean bipartite) throws IOException {
+        final ActorsNetwork g = Fixtures.network(movies, bipartite);
+        g.degreeStats();
+        final Map<String, Supplier<Object>> ret = new LinkedHashMap<>();
+        ret.put("degreeStats", () -> new DegreeStats(g.getSize(), g::getDegree));
+        ret.put("actorStDevs", g::actorStDevs);
+        ret.put("degBuckets", () -> g.degBuckets(10));
+        ret.put("sortedDegToName", g::sortedDegToName);
+        return ret;
+    }
+}
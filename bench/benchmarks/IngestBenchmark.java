@@ -0,0 +1,43 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Parsing throughput of DataProcessing, and construction of the CSR network
+ * from casts that are already parsed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class IngestBenchmark {
+    @Param({"20000", "200000"})
+    public int movies;
+
+    @Param({"true", "false"})
+    public boolean bipartite;
+
+    private Supplier<Object> parse, build;
+
+    @Setup
+    public void setUp() throws ReflectiveOperationException {
+        final Workload workload = new Workload("ingest", movies, bipartite);
+        parse = workload.get("parse");
+        build = workload.get("build");
+    }
+
+    @Benchmark
+    public Object parse() {
+        return parse.get();
+    }
+
+    @Benchmark
+    public Object build() {
+        return build.get();
+    }
+}
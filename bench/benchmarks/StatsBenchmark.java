@@ -0,0 +1,54 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Cost of computing DegreeStats, and of the statistics maps built on it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class StatsBenchmark {
+    @Param({"20000", "200000"})
+    public int movies;
+
+    @Param({"true", "false"})
+    public boolean bipartite;
+
+    private Supplier<Object> degreeStats, actorStDevs, degBuckets, sortedDegToName;
+
+    @Setup
+    public void setUp() throws ReflectiveOperationException {
+        final Workload workload = new Workload("stats", movies, bipartite);
+        degreeStats = workload.get("degreeStats");
+        actorStDevs = workload.get("actorStDevs");
+        degBuckets = workload.get("degBuckets");
+        sortedDegToName = workload.get("sortedDegToName");
+    }
+
+    @Benchmark
+    public Object degreeStats() {
+        return degreeStats.get();
+    }
+
+    @Benchmark
+    public Object actorStDevs() {
+        return actorStDevs.get();
+    }
+
+    @Benchmark
+    public Object degBuckets() {
+        return degBuckets.get();
+    }
+
+    @Benchmark
+    public Object sortedDegToName() {
+        return sortedDegToName.get();
+    }
+}
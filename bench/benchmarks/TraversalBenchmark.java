@@ -0,0 +1,65 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Latency of shortest paths between random actors and between hubs, of a
+ * single-source BFS, and of the sampled and exact diameter searches.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TraversalBenchmark {
+    @Param({"20000", "200000"})
+    public int movies;
+
+    @Param({"true", "false"})
+    public boolean bipartite;
+
+    private Supplier<Object> shortestPathRandom, shortestPathHub, breadthFirstSearch, diameter, exactDiameter;
+
+    @Setup
+    public void setUp() throws ReflectiveOperationException {
+        final Workload workload = new Workload("traversal", movies, bipartite);
+        shortestPathRandom = workload.get("shortestPathRandom");
+        shortestPathHub = workload.get("shortestPathHub");
+        breadthFirstSearch = workload.get("breadthFirstSearch");
+        diameter = workload.get("diameter");
+        exactDiameter = workload.get("exactDiameter");
+    }
+
+    @Benchmark
+    public Object shortestPathRandom() {
+        return shortestPathRandom.get();
+    }
+
+    @Benchmark
+    public Object shortestPathHub() {
+        return shortestPathHub.get();
+    }
+
+    @Benchmark
+    public Object breadthFirstSearch() {
+        return breadthFirstSearch.get();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Object diameter() {
+        return diameter.get();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 3)
+    public Object exactDiameter() {
+        return exactDiameter.get();
+    }
+}
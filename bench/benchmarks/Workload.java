@@ -0,0 +1,28 @@
+package benchmarks;
+
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Looks up the operations of one Workloads method. Workloads lives in the
+ * default package with the classes it exercises, which code in a named
+ * package can only reach reflectively.
+ */
+final class Workload {
+    private final Map<String, Supplier<Object>> operations;
+
+    @SuppressWarnings("unchecked")
+    Workload(String name, int movies, boolean bipartite) throws ReflectiveOperationException {
+        operations = (Map<String, Supplier<Object>>) Class.forName("Workloads")
+                .getMethod(name, int.class, boolean.class)
+                .invoke(null, movies, bipartite);
+    }
+
+    Supplier<Object> get(String operation) {
+        final Supplier<Object> ret = operations.get(operation);
+        if (ret == null) {
+            throw new IllegalArgumentException("No operation " + operation);
+        }
+        return ret;
+    }
+}
@@ -1,23 +1,270 @@
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntBinaryOperator;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 final class ActorsNetwork {
-    private int size = 0;
-    private final Map<String, Integer> nameToID = new HashMap<>();
-    private final String[] idToName;
-    private final List<Integer>[] links;
-
-    ActorsNetwork(Set<String> nodes) {
-        nodes.forEach(n -> nameToID.put(n, size++));
-        idToName = new String[size];
-        links = new List[size];
-        for (int i = 0; i < size; ++i) {
-            links[i] = new LinkedList<>();
+    private static final int GRAIN = 1 << 12;
+    private final int size;
+    private final NameDictionary names;
+    /**
+     * Either the co-star graph over actors, or in bipartite mode the
+     * actor-movie graph where node size + m is movie m.
+     */
+    private final CsrGraph links;
+    /**
+     * Movie titles by movie index, only kept in bipartite mode.
+     */
+    private final String[] titles;
+    private final int hop;
+    private final ComponentIndex components;
+    /**
+     * Co-star counts by actor in bipartite mode, null until first counted.
+     */
+    private final AtomicReference<IntArray> degrees = new AtomicReference<>();
+    /**
+     * The count of degrees under way, set by the caller that runs it.
+     */
+    private final AtomicReference<CompletableFuture<IntArray>> counting = new AtomicReference<>();
+    private volatile DegreeStats stats;
+    /**
+     * Idle search buffers, so concurrent path queries each get their own
+     * without allocating graph-sized arrays per query.
+     */
+    private final Queue<PathSearch> searches = new ConcurrentLinkedQueue<>();
+    private final Queue<WeightedPathSearch> weightedSearches = new ConcurrentLinkedQueue<>();
+    private final ParallelBfs bfs;
+
+    /**
+     * @param components Component id by actor as stored by ComponentIndex,
+     * or null to find the components now
+     */
+    ActorsNetwork(NameDictionary names, CsrGraph links, String[] titles, IntArray degrees, IntArray components) {
+        this.names = names;
+        this.links = links;
+        this.titles = titles;
+        this.degrees.set(degrees);
+        size = names.size();
+        hop = titles == null ? 1 : 2;
+        this.components = components != null ? new ComponentIndex(components) : ComponentIndex.of(links, size);
+        bfs = new ParallelBfs(links);
+    }
+
+    private ActorsNetwork(Map<String, Integer> nameToID, CsrGraph links, String[] titles) {
+        this(NameDictionary.of(namesById(nameToID)), links, titles, null, null);
+    }
+
+    private static String[] namesById(Map<String, Integer> nameToID) {
+        final String[] names = new String[nameToID.size()];
+        nameToID.forEach((n, i) -> names[i] = n);
+        return names;
+    }
+
+    void saveSnapshot(Path file, String sourceTag) throws IOException {
+        GraphSnapshot.save(this, file, sourceTag);
+    }
+
+    /**
+     * @return The network stored in file, or null if there is no usable
+     * snapshot for sourceTag
+     */
+    static ActorsNetwork loadSnapshot(Path file, String sourceTag) throws IOException {
+        return GraphSnapshot.load(file, sourceTag);
+    }
+
+    /**
+     * Year of movies whose release year is not known. Their credits count
+     * in the full network, but in no view asOf a year.
+     */
+    static final int UNKNOWN_YEAR = Integer.MAX_VALUE;
+
+    /**
+     * Collects casts as flat id arrays and turns them into a CSR graph in
+     * one go, so no per-edge objects are ever allocated. build() expands
+     * every cast into a clique; buildBipartite() links actors to movies
+     * instead, which stores 2k entries per cast of k rather than k(k - 1).
+     * Both number the movies in year order, keeping the order of addition
+     * within a year, and date every edge, so the network can be sliced by
+     * year later.
+     */
+    static final class Builder {
+        private final Map<String, Integer> nameToID = new HashMap<>();
+        private int[] members = new int[1 << 16];
+        private int[] castOffsets = new int[1 << 12];
+        private String[] titles = new String[1 << 12];
+        private int[] years = new int[1 << 12];
+        private int casts = 0;
+
+        Builder addCast(String[] cast) {
+            return addMovie(null, cast);
+        }
+
+        Builder addMovie(String title, String[] cast) {
+            return addMovie(title, UNKNOWN_YEAR, cast);
+        }
+
+        /**
+         * @param year Release year, or UNKNOWN_YEAR
+         */
+        Builder addMovie(String title, int year, String[] cast) {
+            if (year < 0) {
+                throw new IllegalArgumentException("Negative year " + year);
+            }
+            final int start = castOffsets[casts];
+            if (start + cast.length > members.length) {
+                members = Arrays.copyOf(members, Math.max(members.length * 2, start + cast.length));
+            }
+            if (casts + 2 > castOffsets.length) {
+                castOffsets = Arrays.copyOf(castOffsets, castOffsets.length * 2);
+                titles = Arrays.copyOf(titles, castOffsets.length);
+                years = Arrays.copyOf(years, castOffsets.length);
+            }
+            titles[casts] = title;
+            years[casts] = year;
+            int count = 0;
+            for (String name : cast) {
+                Integer id = nameToID.get(name);
+                if (id == null) {
+                    id = nameToID.size();
+                    nameToID.put(name, id);
+                } else if (listed(id, start, count)) {
+                    continue;
+                }
+                members[start + count++] = id;
+            }
+            castOffsets[++casts] = start + count;
+            return this;
+        }
+
+        /**
+         * Whether the cast being added already lists an actor, so that a
+         * name repeated within one cast counts as a single credit.
+         */
+        private boolean listed(int id, int start, int count) {
+            for (int i = start; i < start + count; ++i) {
+                if (members[i] == id) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Reorders the casts stably by year, unless they already are.
+         */
+        private void sortByYear() {
+            boolean sorted = true;
+            for (int c = 1; c < casts && sorted; ++c) {
+                sorted = years[c - 1] <= years[c];
+            }
+            if (sorted) {
+                return;
+            }
+            final long[] order = new long[casts];
+            for (int c = 0; c < casts; ++c) {
+                order[c] = (long) years[c] << 32 | c;
+            }
+            Arrays.sort(order);
+            final int[] sortedMembers = new int[members.length];
+            final int[] sortedOffsets = new int[castOffsets.length];
+            final String[] sortedTitles = new String[titles.length];
+            final int[] sortedYears = new int[years.length];
+            for (int i = 0; i < casts; ++i) {
+                final int c = (int) order[i];
+                final int length = castOffsets[c + 1] - castOffsets[c];
+                System.arraycopy(members, castOffsets[c], sortedMembers, sortedOffsets[i], length);
+                sortedOffsets[i + 1] = sortedOffsets[i] + length;
+                sortedTitles[i] = titles[c];
+                sortedYears[i] = years[c];
+            }
+            members = sortedMembers;
+            castOffsets = sortedOffsets;
+            titles = sortedTitles;
+            years = sortedYears;
+        }
+
+        ActorsNetwork build() {
+            final Metrics.Build event = Metrics.build("cliques");
+            sortByYear();
+            return event.finish(new ActorsNetwork(nameToID,
+                    CsrGraph.fromCliques(nameToID.size(), members, castOffsets, years, casts), null));
+        }
+
+        ActorsNetwork buildBipartite() {
+            final Metrics.Build event = Metrics.build("bipartite");
+            sortByYear();
+            return event.finish(new ActorsNetwork(nameToID,
+                    CsrGraph.fromBipartite(nameToID.size(), members, castOffsets, years, casts),
+                    Arrays.copyOf(titles, casts)));
         }
-        nameToID.forEach((n, i) -> idToName[i] = n);
     }
 
     boolean exists(String k) {
-        return nameToID.containsKey(k);
+        return names.find(k) != -1;
+    }
+
+    /**
+     * @return Up to limit actors whose names start with prefix, most
+     * connected first
+     */
+    int[] complete(String prefix, int limit) {
+        final PriorityQueue<Integer> top = new PriorityQueue<>(byDegree());
+        names.forEachWithPrefix(prefix, id -> {
+            top.add(id);
+            if (top.size() > limit) {
+                top.poll();
+            }
+        });
+        return drain(top);
+    }
+
+    /**
+     * Looks for names within a few typos of query, ignoring case: none for
+     * up to two characters, one for up to five and two beyond that.
+     * @param prefix If true, a name matches when it starts with something
+     * close to query
+     * @return Up to limit actors, closest and then most connected first
+     */
+    int[] suggest(String query, boolean prefix, int limit) {
+        final int length = query.codePointCount(0, query.length());
+        if (length == 0) {
+            return new int[0];
+        }
+        final int maxEdits = length <= 2 ? 0 : length <= 5 ? 1 : 2;
+        final Map<Integer, Integer> edits = new HashMap<>();
+        final PriorityQueue<Integer> top = new PriorityQueue<>(
+                Comparator.<Integer>comparingInt(edits::get).reversed().thenComparing(byDegree()));
+        names.forEachWithin(query, maxEdits, prefix, (id, e) -> {
+            edits.put(id, e);
+            top.add(id);
+            if (top.size() > limit) {
+                edits.remove(top.poll());
+            }
+        });
+        return drain(top);
+    }
+
+    private Comparator<Integer> byDegree() {
+        return Comparator.<Integer>comparingInt(this::getDegree).thenComparing(Comparator.reverseOrder());
+    }
+
+    /**
+     * @return The contents of a min-heap, largest first
+     */
+    private static int[] drain(PriorityQueue<Integer> top) {
+        final int[] ret = new int[top.size()];
+        for (int i = ret.length - 1; i >= 0; --i) {
+            ret[i] = top.poll();
+        }
+        return ret;
     }
 
     private void ensureValid(int u) {
@@ -30,83 +277,340 @@ final class ActorsNetwork {
         Arrays.stream(u).forEach(this::ensureValid);
     }
 
-    void addEdge(String u, String v) {
-        if (!exists(u) || !exists(v)) {
-            throw new NoSuchElementException();
-        }
-        final int uId = nameToID.get(u);
-        final int vId = nameToID.get(v);
-        links[uId].add(vId);
-        links[vId].add(uId);
-    }
-
     int getID(String u) {
-        if (!exists(u)) {
+        final int id = names.find(u);
+        if (id == -1) {
             throw new NoSuchElementException();
         }
-        return nameToID.get(u);
+        return id;
     }
 
     String getName(int u) {
         ensureValid(u);
-        return idToName[u];
+        return names.name(u);
+    }
+
+    boolean isBipartite() {
+        return titles != null;
     }
 
+    /**
+     * In bipartite mode the degree is the number of distinct co-stars,
+     * counted once for all actors on first use.
+     */
     int getDegree(int u) {
-        return links[u].size();
+        if (!isBipartite()) {
+            return links.degree(u);
+        }
+        return coStarDegrees().get(u);
+    }
+
+    /**
+     * The first caller to find the degrees missing counts them, and callers
+     * arriving meanwhile wait for that count instead of running their own.
+     */
+    IntArray coStarDegrees() {
+        final IntArray counted = degrees.get();
+        if (counted != null) {
+            return counted;
+        }
+        final CompletableFuture<IntArray> mine = new CompletableFuture<>();
+        final CompletableFuture<IntArray> running = counting.compareAndExchange(null, mine);
+        if (running != null) {
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+        try {
+            degrees.compareAndSet(null, countCoStars());
+            mine.complete(degrees.get());
+            return degrees.get();
+        } catch (RuntimeException | Error e) {
+            // Let a later caller try again
+            counting.set(null);
+            mine.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Counts the co-stars of all actors in parallel, each worker with its
+     * own marks.
+     */
+    private IntArray countCoStars() {
+        final int[] counted = new int[size];
+        final AtomicInteger next = new AtomicInteger();
+        final int chunks = (size + GRAIN - 1) / GRAIN;
+        final int threads = Math.max(1, Math.min(chunks, Runtime.getRuntime().availableProcessors()));
+        IntStream.range(0, threads).parallel().forEach(t -> {
+            final int[] seen = new int[size];
+            for (int c; (c = next.getAndIncrement()) < chunks; ) {
+                for (int u = c * GRAIN, end = Math.min(size, u + GRAIN); u < end; ++u) {
+                    counted[u] = countCoStars(u, seen);
+                }
+            }
+        });
+        return IntArray.of(counted);
+    }
+
+    /**
+     * @param seen Marks, set to u + 1 for u and its co-stars; calls for
+     * different actors can share it
+     */
+    private int countCoStars(int u, int[] seen) {
+        int counted = 0;
+        seen[u] = u + 1;
+        for (int i = links.begin(u), end = links.end(u); i < end; ++i) {
+            final int movie = links.target(i);
+            for (int j = links.begin(movie), jEnd = links.end(movie); j < jEnd; ++j) {
+                final int w = links.target(j);
+                if (seen[w] != u + 1) {
+                    seen[w] = u + 1;
+                    ++counted;
+                }
+            }
+        }
+        return counted;
+    }
+
+    /**
+     * @return This network with its adjacency laid out contiguously again,
+     * or this network if it already is
+     */
+    ActorsNetwork compact() {
+        final CsrGraph compacted = links.compact();
+        return compacted == links ? this
+                : new ActorsNetwork(names, compacted, titles, degrees.get(), components.ids());
+    }
+
+    /**
+     * Adds the movies collected by delta in a new version of this network,
+     * leaving this one as it is, so queries running on it are unaffected.
+     * Actors are matched by name and new ones numbered after the existing
+     * ones. Only the segments of the actors in the new casts are rewritten,
+     * by CsrGraph.merge, and co-star degrees counted so far are carried
+     * over and recounted for those actors only. In bipartite mode new actors
+     * push the movie nodes up, so adding any compacts the graph first.
+     * @throws IllegalStateException If this is a view asOf some year
+     */
+    ActorsNetwork withMovies(Builder delta) {
+        if (links.isView()) {
+            throw new IllegalStateException("Cannot add movies to a view");
+        }
+        if (delta.casts == 0) {
+            return this;
+        }
+        final Metrics.Build event = Metrics.build("update");
+        delta.sortByYear();
+        final String[] local = namesById(delta.nameToID);
+        final int[] ids = new int[local.length];
+        final List<String> added = new ArrayList<>();
+        for (int i = 0; i < local.length; ++i) {
+            ids[i] = names.find(local[i]);
+            if (ids[i] == -1) {
+                ids[i] = size + added.size();
+                added.add(local[i]);
+            }
+        }
+        final int actors = size + added.size();
+        final int[] members = new int[delta.castOffsets[delta.casts]];
+        for (int i = 0; i < members.length; ++i) {
+            members[i] = ids[delta.members[i]];
+        }
+        final CsrGraph merged;
+        String[] newTitles = null;
+        if (isBipartite()) {
+            final CsrGraph base = added.isEmpty() ? links : links.insertNodes(size, added.size());
+            merged = base.merge(CsrGraph.fromBipartite(actors, titles.length, members, delta.castOffsets,
+                    delta.years, delta.casts));
+            newTitles = Arrays.copyOf(titles, titles.length + delta.casts);
+            System.arraycopy(delta.titles, 0, newTitles, titles.length, delta.casts);
+        } else {
+            merged = links.merge(CsrGraph.fromCliques(actors, members, delta.castOffsets, delta.years, delta.casts));
+        }
+        final ActorsNetwork ret = new ActorsNetwork(names.withNames(added.toArray(new String[0])), merged,
+                newTitles, null, null);
+        final IntArray counted = degrees.get();
+        if (isBipartite() && counted != null) {
+            final int[] recounted = Arrays.copyOf(counted.copyOfRange(0, size), actors);
+            final int[] seen = new int[actors];
+            final BitSet done = new BitSet(actors);
+            for (int u : members) {
+                if (!done.get(u)) {
+                    done.set(u);
+                    recounted[u] = ret.countCoStars(u, seen);
+                }
+            }
+            ret.degrees.set(IntArray.of(recounted));
+        }
+        return event.finish(ret);
     }
 
     int getSize() {
         return size;
     }
 
-    private int[] breadthFirstSearchWithLength(int u) {
-        final int[] distance = new int[size];
-        Arrays.fill(distance, -1);
-        Queue<Integer> q = new LinkedList<>();
-        q.add(u);
-        distance[u] = 0;
-        while (!q.isEmpty()) {
-            final int front = q.remove();
-            links[front].stream().filter(e -> distance[e] == -1).forEach(e -> {
-                distance[e] = distance[front] + 1;
-                q.add(e);
-            });
-        }
-        return distance;
+    int getMovieCount() {
+        return isBipartite() ? titles.length : 0;
+    }
+
+    String getMovieTitle(int m) {
+        return titles[m];
     }
 
-    private int[] breadthFirstSearchWithIncoming(int u, int v) {
-        final int[] incoming = new int[size];
-        Arrays.fill(incoming, -1);
-        Queue<Integer> q = new LinkedList<>();
-        q.add(u);
-        incoming[u] = u;
-        while (!q.isEmpty() && incoming[v] == -1) {
-            final int front = q.remove();
-            Collections.shuffle(links[front]);
-            links[front].stream().filter(e -> incoming[e] == -1).forEach(e -> {
-                incoming[e] = front;
-                q.add(e);
-            });
+    NameDictionary names() {
+        return names;
+    }
+
+    CsrGraph graph() {
+        return links;
+    }
+
+    ComponentIndex components() {
+        return components;
+    }
+
+    /**
+     * The network as it stood at the end of year: only movies released by
+     * then link actors. It shares the names, titles and edges of this
+     * network, so every query runs on it unchanged; only the components and
+     * co-star degrees are worked out anew. Actors keep their ids, and those
+     * who had not debuted yet have no co-stars. The exception are the
+     * queries that weigh ties by movies shared on a co-star graph, whose
+     * edges only keep the year of the first movie shared and a count of all
+     * of them: strongestPath, communities and egoNetwork throw on such a
+     * view rather than rank by movies made after year.
+     * @throws IllegalStateException If the edges of this network have no
+     * years, as in snapshots written before years were stored
+     */
+    ActorsNetwork asOf(int year) {
+        return new ActorsNetwork(names, links.upTo(year), titles, null, null);
+    }
+
+    /**
+     * @return Whether there is a path between two actors
+     */
+    boolean connected(int u, int v) {
+        ensureValid(u, v);
+        return components.connected(u, v);
+    }
+
+    int[] breadthFirstSearchWithLength(int u, CancellationToken token) {
+        final Metrics.Query query = Metrics.query("bfs");
+        final ParallelBfs.Stats work = new ParallelBfs.Stats();
+        final int[] distance;
+        try {
+            distance = bfs.distances(u, token, work);
+        } finally {
+            query.finish(work.visited, work.scanned, work.maxFrontier);
+        }
+        if (!isBipartite()) {
+            return distance;
+        }
+        final int[] actorDistance = Arrays.copyOf(distance, size);
+        for (int i = 0; i < size; ++i) {
+            if (actorDistance[i] > 0) {
+                actorDistance[i] /= hop;
+            }
         }
-        return incoming;
+        return actorDistance;
     }
 
     List<Integer> shortestPath(int u, int v) {
+        return shortestPathWithMovies(u, v, false).first;
+    }
+
+    List<Integer> shortestPath(int u, int v, boolean randomTies) {
+        return shortestPathWithMovies(u, v, randomTies).first;
+    }
+
+    /**
+     * Finds a shortest path along with the movie behind each hop. Movie
+     * titles are only known in bipartite mode and are null otherwise.
+     * @param randomTies Whether to pick among equally short paths at random
+     * @return Actors on the path, and one title per consecutive pair
+     */
+    Util.Pair<List<Integer>, List<String>> shortestPathWithMovies(int u, int v, boolean randomTies) {
+        return shortestPathWithMovies(u, v, randomTies, CancellationToken.NONE);
+    }
+
+    /**
+     * @throws java.util.concurrent.CancellationException If token is
+     * cancelled before the search finishes
+     */
+    Util.Pair<List<Integer>, List<String>> shortestPathWithMovies(int u, int v, boolean randomTies,
+                                                                  CancellationToken token) {
         ensureValid(u, v);
-        final int[] incoming = breadthFirstSearchWithIncoming(u, v);
-        if (incoming[v] == -1) {
-            return Collections.emptyList();
+        final Metrics.Query query = Metrics.query("path");
+        if (!components.connected(u, v)) {
+            query.finish(0, 0, 0);
+            return new Util.Pair<>(Collections.emptyList(), Collections.emptyList());
         }
-        LinkedList<Integer> ret = new LinkedList<>();
-        ret.addFirst(v);
-        int cur = v;
-        while (cur != incoming[cur]) {
-            cur = incoming[cur];
-            ret.addFirst(cur);
+        final PathSearch search = acquireSearch();
+        final int[] path;
+        try {
+            path = search.path(u, v, randomTies ? ThreadLocalRandom.current() : null, token);
+        } finally {
+            query.finish(search.visited(), search.scanned(), search.maxFrontier());
+            searches.offer(search);
+        }
+        if (path == null) {
+            return new Util.Pair<>(Collections.emptyList(), Collections.emptyList());
+        }
+        final List<Integer> actors = new ArrayList<>(path.length / hop + 1);
+        final List<String> movies = new ArrayList<>(path.length / hop);
+        for (int node : path) {
+            if (node >= size) {
+                movies.add(titles[node - size]);
+            } else {
+                if (!isBipartite() && !actors.isEmpty()) {
+                    movies.add(null);
+                }
+                actors.add(node);
+            }
+        }
+        return new Util.Pair<>(actors, movies);
+    }
+
+    private PathSearch acquireSearch() {
+        final PathSearch search = searches.poll();
+        return search != null ? search : new PathSearch(links);
+    }
+
+    /**
+     * @return The number of hops between two actors, or -1 if they are not
+     * connected
+     */
+    int distance(int u, int v) {
+        return distance(u, v, Integer.MAX_VALUE, (a, b) -> 0);
+    }
+
+    /**
+     * Measures the distance between two actors, looking only for paths
+     * shorter than limit and skipping actors that lowerBound rules out.
+     * @param lowerBound Never more than the distance between two actors
+     * @return The distance, limit if there is no shorter path, or -1 if
+     * limit is Integer.MAX_VALUE and the actors are not connected
+     */
+    int distance(int u, int v, int limit, IntBinaryOperator lowerBound) {
+        ensureValid(u, v);
+        final Metrics.Query query = Metrics.query("distance");
+        if (!components.connected(u, v)) {
+            query.finish(0, 0, 0);
+            return limit == Integer.MAX_VALUE ? -1 : limit;
+        }
+        final PathSearch search = acquireSearch();
+        try {
+            final int hops = search.distance(u, v, limit == Integer.MAX_VALUE ? limit : limit * hop,
+                    (w, target) -> w >= size ? 0 : (int) Math.min(Integer.MAX_VALUE, (long) lowerBound.applyAsInt(w, target) * hop),
+                    CancellationToken.NONE);
+            return hops == -1 ? -1 : hops / hop;
+        } finally {
+            query.finish(search.visited(), search.scanned(), search.maxFrontier());
+            searches.offer(search);
         }
-        return ret;
     }
 
     private int getRandomMaximum(int[] l) {
@@ -124,43 +628,286 @@ final class ActorsNetwork {
         return ret.get((int) (Math.random() * ret.size()));
     }
 
+    /**
+     * Samples a lower bound on the diameter of the giant component with two
+     * BFS runs from a random actor in it.
+     * @return Two actors whose distance is the bound
+     */
     Util.Pair<Integer, Integer> getDiameter() {
-        final int start = (int) (Math.random() * size);
-        int[] distances = breadthFirstSearchWithLength(start);
+        final int start = components.randomMember(0, ThreadLocalRandom.current());
+        int[] distances = breadthFirstSearchWithLength(start, CancellationToken.NONE);
         final int oneEnd = getRandomMaximum(distances);
-        distances = breadthFirstSearchWithLength(oneEnd);
+        distances = breadthFirstSearchWithLength(oneEnd, CancellationToken.NONE);
         return new Util.Pair<>(oneEnd, getRandomMaximum(distances));
     }
 
-    List<Integer> getNeighbors(int u) {
-        return links[u];
+    /**
+     * Computes the distance distribution from every source, running up to 64
+     * sources through a single bit-parallel BFS.
+     * @return histograms[i][d] is the number of actors at distance d from
+     * sources[i]
+     */
+    long[][] distanceHistograms(int... sources) {
+        ensureValid(sources);
+        return new MultiSourceBfs(links, size, hop, 1).run(sources, false, CancellationToken.NONE).histograms;
     }
 
-    double averageDegree() {
-        double totalDeg = 0;
-        for (List<Integer> node : links) {
-            totalDeg += node.size();
+    /**
+     * Like distanceHistograms, but also returns every source's full row of
+     * distances, -1 for unreachable actors.
+     */
+    int[][] distanceRows(int... sources) {
+        ensureValid(sources);
+        return new MultiSourceBfs(links, size, hop, 1).run(sources, true, CancellationToken.NONE).rows;
+    }
+
+    int[] eccentricities(int... sources) {
+        return eccentricities(CancellationToken.NONE, sources);
+    }
+
+    private int[] eccentricities(CancellationToken token, int... sources) {
+        ensureValid(sources);
+        final MultiSourceBfs.Result result = new MultiSourceBfs(links, size, hop, 1).run(sources, false, token);
+        final int[] ret = new int[sources.length];
+        for (int i = 0; i < sources.length; ++i) {
+            ret[i] = result.eccentricity(i);
         }
-        return totalDeg / size;
+        return ret;
     }
 
-    double graphStDev() {
-        double average = averageDegree();
-        double diffSquaredSum = 0;
-        for (List<Integer> node : links) {
-            diffSquaredSum += Math.pow(node.size() - average, 2);
+    /**
+     * Finds the exact diameter of the component around the best-connected
+     * actor, unlike getDiameter() which only samples a lower bound.
+     * @param listener Notified of the bounds after every BFS
+     * @return Two actors whose distance is the diameter
+     */
+    Util.Pair<Integer, Integer> getExactDiameter(DiameterSearch.Listener listener) {
+        return getExactDiameter(listener, CancellationToken.NONE);
+    }
+
+    /**
+     * @throws java.util.concurrent.CancellationException If token is
+     * cancelled before the search finishes
+     */
+    Util.Pair<Integer, Integer> getExactDiameter(DiameterSearch.Listener listener, CancellationToken token) {
+        final DiameterSearch search = new DiameterSearch(size, u -> breadthFirstSearchWithLength(u, token),
+                sources -> eccentricities(token, sources), this::getDegree, listener).run();
+        return new Util.Pair<>(search.from(), search.to());
+    }
+
+    /**
+     * Scores every actor's betweenness, closeness and harmonic centrality.
+     * @param pivots How many actors to sample as sources, or 0 for exact
+     * scores from every actor
+     */
+    Centrality.Result centrality(int pivots) {
+        return centrality(pivots, ThreadLocalRandom.current(), CancellationToken.NONE);
+    }
+
+    /**
+     * @throws java.util.concurrent.CancellationException If token is
+     * cancelled before the scores are complete
+     */
+    Centrality.Result centrality(int pivots, Random random, CancellationToken token) {
+        final int[] sources = new int[size];
+        for (int i = 0; i < size; ++i) {
+            sources[i] = i;
+        }
+        if (pivots <= 0 || pivots >= size) {
+            return new Centrality(links, size, hop).run(sources, token);
         }
-        return Math.sqrt(diffSquaredSum / size);
+        for (int i = 0; i < pivots; ++i) {
+            final int j = i + random.nextInt(size - i);
+            final int t = sources[i];
+            sources[i] = sources[j];
+            sources[j] = t;
+        }
+        return new Centrality(links, size, hop).run(Arrays.copyOf(sources, pivots), token);
     }
 
-    SortedMap<Double, Integer> actorStDevs() {
-        SortedMap<Double, Integer> stDevs = new TreeMap<>();
-        double averageDegree = averageDegree();
-        double graphStDev = graphStDev();
+    /**
+     * Groups the actors into communities by label propagation on every core.
+     */
+    Communities communities() {
+        return communities(CancellationToken.NONE);
+    }
+
+    /**
+     * @throws java.util.concurrent.CancellationException If token is
+     * cancelled before the labels settle
+     */
+    Communities communities(CancellationToken token) {
+        ensureCurrentWeights();
+        return Communities.of(links, size, token);
+    }
+
+    /**
+     * @return u and its k strongest collaborators, with the links among them
+     */
+    EgoNetwork egoNetwork(int u, int k) {
+        return egoNetwork(u, 1, k, k + 1, Integer.MAX_VALUE, EgoNetwork.Rank.WEIGHT, new int[0],
+                CancellationToken.NONE);
+    }
 
-        for (int id = 0; id < size; id++) {
-            double currStDev = (links[id].size() - averageDegree) / graphStDev;
-            stDevs.put(currStDev, id);
+    /**
+     * Samples the actors around u and the links among them; see
+     * EgoNetwork.sample for the budgets.
+     */
+    EgoNetwork egoNetwork(int u, int hops, int k, int maxNodes, int maxLinks, EgoNetwork.Rank rank,
+                          int[] context, CancellationToken token) {
+        ensureValid(u);
+        ensureValid(context);
+        ensureCurrentWeights();
+        return EgoNetwork.sample(links, size, this::getDegree, u, hops, k, maxNodes, maxLinks, rank, context, token);
+    }
+
+    int[] getNeighbors(int u) {
+        ensureValid(u);
+        if (!isBipartite()) {
+            return links.neighbors(u);
+        }
+        final int[] coStars = coStarCredits(u);
+        int unique = 0;
+        for (int i = 0; i < coStars.length; ++i) {
+            if (unique == 0 || coStars[unique - 1] != coStars[i]) {
+                coStars[unique++] = coStars[i];
+            }
+        }
+        return Arrays.copyOf(coStars, unique);
+    }
+
+    /**
+     * @return The co-stars of u in every movie of a bipartite network,
+     * sorted, each repeated once per movie shared
+     */
+    private int[] coStarCredits(int u) {
+        int count = 0;
+        for (int i = links.begin(u), end = links.end(u); i < end; ++i) {
+            count += links.degree(links.target(i)) - 1;
+        }
+        final int[] coStars = new int[count];
+        count = 0;
+        for (int i = links.begin(u), end = links.end(u); i < end; ++i) {
+            final int movie = links.target(i);
+            for (int j = links.begin(movie), jEnd = links.end(movie); j < jEnd; ++j) {
+                if (links.target(j) != u) {
+                    coStars[count++] = links.target(j);
+                }
+            }
+        }
+        Arrays.sort(coStars);
+        return coStars;
+    }
+
+    /**
+     * @return Ties for one weighted search: in bipartite mode they count
+     * shared movies with CoStars of their own, so every search needs its
+     * own ties. Arguments are checked by strongestPath, not here.
+     */
+    private WeightedPathSearch.Ties collaborators() {
+        if (!isBipartite()) {
+            return (u, action) -> {
+                for (int i = links.begin(u), end = links.end(u); i < end; ++i) {
+                    action.accept(links.target(i), links.weight(i));
+                }
+            };
+        }
+        final CoStars coStars = new CoStars(size);
+        return (u, action) -> {
+            coStars.count(links, u);
+            for (int i = 0; i < coStars.size; ++i) {
+                final int v = coStars.found[i];
+                action.accept(v, coStars.shared[v]);
+            }
+        };
+    }
+
+    /**
+     * @throws IllegalStateException If this is a co-star graph viewed asOf
+     * some year, whose tie weights still count the movies made after it
+     */
+    private void ensureCurrentWeights() {
+        if (!isBipartite() && links.isView()) {
+            throw new IllegalStateException("Tie weights of a co-star graph cannot be cut off at a year");
+        }
+    }
+
+    Util.Pair<List<Integer>, List<Integer>> strongestPath(int u, int v) {
+        return strongestPath(u, v, CancellationToken.NONE);
+    }
+
+    /**
+     * Finds the path between two actors whose collaborations are strongest,
+     * preferring co-stars of many shared movies even over a shorter path
+     * through one-off ties; see WeightedPathSearch.
+     * @return Actors on the path, and the number of movies shared on each
+     * hop; both empty if the actors are not connected
+     */
+    Util.Pair<List<Integer>, List<Integer>> strongestPath(int u, int v, CancellationToken token) {
+        ensureValid(u, v);
+        ensureCurrentWeights();
+        final Metrics.Query query = Metrics.query("strongestPath");
+        if (!components.connected(u, v)) {
+            query.finish(0, 0, 0);
+            return new Util.Pair<>(Collections.emptyList(), Collections.emptyList());
+        }
+        WeightedPathSearch search = weightedSearches.poll();
+        if (search == null) {
+            search = new WeightedPathSearch(size, collaborators());
+        }
+        final int[] path;
+        try {
+            path = search.path(u, v, token);
+        } finally {
+            query.finish(search.settled(), search.relaxed(), search.maxHeap());
+            weightedSearches.offer(search);
+        }
+        final List<Integer> actors = new ArrayList<>(path.length / 2 + 1);
+        final List<Integer> shared = new ArrayList<>(path.length / 2);
+        for (int i = 0; i < path.length; ++i) {
+            (i % 2 == 0 ? actors : shared).add(path[i]);
+        }
+        return new Util.Pair<>(actors, shared);
+    }
+
+    /**
+     * @return Degree statistics of the actors, computed on first use
+     */
+    DegreeStats degreeStats() {
+        DegreeStats ret = stats;
+        if (ret == null) {
+            synchronized (this) {
+                ret = stats;
+                if (ret == null) {
+                    // Count co-stars here rather than in DegreeStats' workers,
+                    // which would block on this lock
+                    stats = ret = new DegreeStats(size, isBipartite() ? coStarDegrees()::get : links::degree);
+                }
+            }
+        }
+        return ret;
+    }
+
+    double averageDegree() {
+        return degreeStats().mean();
+    }
+
+    double graphStDev() {
+        return degreeStats().stDev();
+    }
+
+    /**
+     * @return Actors grouped by how many standard deviations their degree is
+     * from the mean
+     */
+    SortedMap<Double, List<Integer>> actorStDevs() {
+        final DegreeStats stats = degreeStats();
+        final SortedMap<Double, List<Integer>> stDevs = new TreeMap<>();
+        for (int d = 0; d <= stats.maxDegree(); ++d) {
+            final int[] actors = stats.range(d, d);
+            if (actors.length > 0) {
+                stDevs.put(stats.zScore(actors[0]), Arrays.stream(actors).boxed().collect(Collectors.toList()));
+            }
         }
         return stDevs;
     }
@@ -173,36 +920,39 @@ final class ActorsNetwork {
      * which helps when creating histograms.
      * @param interval The degree range in each bucket
      * @return A map with min degree as key and number of actors as values
+     * @throws IllegalArgumentException If interval is not positive
      */
     SortedMap<Integer, Integer> degBuckets(int interval) {
-        SortedMap<Integer, Integer> degs = new TreeMap<>();
-        int maxBucket = 0;
-        for (List<Integer> actor : links) {
-            int degree = actor.size();
-            int bucket = degree / interval * interval;
+        return degreeStats().histogram(interval);
+    }
 
-            if (bucket > maxBucket) {
-                maxBucket = bucket;
-            }
-            degs.put(bucket, degs.getOrDefault(bucket, 0) + 1);
-        }
-        for (int bucket = 0; bucket < maxBucket; bucket += interval) {
-            if (!degs.containsKey(bucket)) {
-                degs.put(bucket, 0);
-            }
+    /**
+     * @return A map with component size as key and the number of components
+     * of that size as value
+     */
+    SortedMap<Integer, Integer> componentSizes() {
+        final SortedMap<Integer, Integer> ret = new TreeMap<>();
+        for (int c = 0; c < components.count(); ++c) {
+            ret.merge(components.size(c), 1, Integer::sum);
         }
-
-        return degs;
+        return ret;
     }
 
     double getActorStDev(int id) {
-        return (links[id].size() - averageDegree()) / graphStDev();
+        return degreeStats().zScore(id);
     }
 
-    SortedMap<Integer, String> sortedDegToName() {
-        SortedMap<Integer, String> actors = new TreeMap<>();
-        for (int i = 0; i < size; i++) {
-            actors.put(links[i].size(), idToName[i]);
+    /**
+     * @return The names of the actors of each degree
+     */
+    SortedMap<Integer, List<String>> sortedDegToName() {
+        final DegreeStats stats = degreeStats();
+        final SortedMap<Integer, List<String>> actors = new TreeMap<>();
+        for (int d = 0; d <= stats.maxDegree(); ++d) {
+            final int[] ids = stats.range(d, d);
+            if (ids.length > 0) {
+                actors.put(d, Arrays.stream(ids).mapToObj(names::name).collect(Collectors.toList()));
+            }
         }
         return actors;
     }
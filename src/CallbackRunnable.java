@@ -1,13 +0,0 @@
-class CallbackRunnable extends Thread {
-    Runnable callback;
-
-    CallbackRunnable(Runnable a) {
-        super(a);
-    }
-
-    @Override
-    public void run() {
-        super.run();
-        callback.run();
-    }
-}
@@ -0,0 +1,33 @@
+import java.util.concurrent.CancellationException;
+
+/**
+ * Cooperative cancellation flag for long-running graph queries. Searches
+ * call check() once per BFS level, so a cancelled query stops within one
+ * level instead of running to completion.
+ */
+final class CancellationToken {
+    /**
+     * A token that is never cancelled.
+     */
+    static final CancellationToken NONE = new CancellationToken();
+    private volatile boolean cancelled = false;
+
+    void cancel() {
+        if (this != NONE) {
+            cancelled = true;
+        }
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @throws CancellationException If the token has been cancelled
+     */
+    void check() {
+        if (cancelled) {
+            throw new CancellationException();
+        }
+    }
+}
@@ -0,0 +1,272 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+/**
+ * Betweenness, closeness and harmonic centrality of the actors, from one
+ * BFS per source. Betweenness uses Brandes' dependency accumulation, walking
+ * the BFS order backwards. Sources are shared out to one worker per core,
+ * and each worker keeps its own primitive accumulators, which are added up
+ * at the end, so workers never contend.
+ * <p>
+ * With every actor as a source the scores are exact. A sample of k pivot
+ * sources gives unbiased estimates (Brandes and Pich), at k/n of the cost.
+ * By Hoeffding's inequality, normalized betweenness and harmonic centrality
+ * are then within error(confidence) of the exact value for each actor with
+ * at least that confidence.
+ * <p>
+ * In bipartite mode paths run through movie nodes. Only actors count as
+ * endpoints or are scored, and two co-stars who share several movies are
+ * joined by several shortest paths.
+ */
+final class Centrality {
+    /**
+     * Scores by actor id.
+     */
+    static final class Result {
+        /**
+         * Expected number of shortest paths between other actors that run
+         * through each actor, counting each unordered pair once.
+         */
+        final double[] betweenness;
+        /**
+         * Inverse mean distance to the actors (or sampled sources) that
+         * reach each actor, 0 if none do. A ratio estimate when sampled,
+         * without an error bound.
+         */
+        final double[] closeness;
+        /**
+         * Sum of the inverse distances to every other actor, unreachable
+         * ones adding 0.
+         */
+        final double[] harmonic;
+        final int sources;
+
+        private Result(double[] betweenness, double[] closeness, double[] harmonic, int sources) {
+            this.betweenness = betweenness;
+            this.closeness = closeness;
+            this.harmonic = harmonic;
+            this.sources = sources;
+        }
+
+        int size() {
+            return betweenness.length;
+        }
+
+        boolean exact() {
+            return sources == size();
+        }
+
+        /**
+         * Betweenness as a fraction of the pairs of other actors.
+         */
+        double normalizedBetweenness(int u) {
+            final double n = size();
+            return n < 3 ? 0 : betweenness[u] / ((n - 1) * (n - 2) / 2);
+        }
+
+        /**
+         * Harmonic centrality as a fraction of its largest possible value.
+         */
+        double normalizedHarmonic(int u) {
+            return size() < 2 ? 0 : harmonic[u] / (size() - 1);
+        }
+
+        /**
+         * @param confidence Probability that an actor's sampled estimate is
+         * within the bound, below 1
+         * @return Bound on the error of normalizedBetweenness and
+         * normalizedHarmonic, 0 for exact results
+         */
+        double error(double confidence) {
+            if (exact() || sources == 0) {
+                return exact() ? 0 : Double.POSITIVE_INFINITY;
+            }
+            final double n = size();
+            return n / (n - 1) * Math.sqrt(Math.log(2 / (1 - confidence)) / (2 * sources));
+        }
+    }
+
+    private final CsrGraph links;
+    private final int actors;
+    private final int hop;
+
+    /**
+     * @param actors Nodes below actors are actors, any others are movies
+     * @param hop Edges per step between co-stars
+     */
+    Centrality(CsrGraph links, int actors, int hop) {
+        this.links = links;
+        this.actors = actors;
+        this.hop = hop;
+    }
+
+    /**
+     * @param sources Distinct actors to run BFS from; all of them for exact
+     * scores, otherwise a uniform sample
+     * @param token Checked before every source
+     */
+    Result run(int[] sources, CancellationToken token) {
+        final AtomicInteger next = new AtomicInteger();
+        final int threads = Math.max(1, Math.min(sources.length, Runtime.getRuntime().availableProcessors()));
+        final Worker total = IntStream.range(0, threads).parallel()
+                .mapToObj(t -> {
+                    final Worker worker = new Worker();
+                    for (int i; (i = next.getAndIncrement()) < sources.length; ) {
+                        token.check();
+                        worker.run(sources[i]);
+                    }
+                    return worker;
+                })
+                .reduce(Worker::add)
+                .orElseGet(Worker::new);
+        // Sampled sums stand for n / k times as many sources, and every
+        // unordered pair was counted from both ends
+        final double scale = sources.length == 0 ? 0 : (double) actors / sources.length;
+        final double[] betweenness = new double[actors];
+        final double[] closeness = new double[actors];
+        final double[] harmonic = new double[actors];
+        for (int u = 0; u < actors; ++u) {
+            betweenness[u] = total.dependency[u] * scale / 2;
+            closeness[u] = total.distanceSum[u] == 0 ? 0 : (double) total.reached[u] / total.distanceSum[u];
+            harmonic[u] = total.harmonic[u] * scale;
+        }
+        return new Result(betweenness, closeness, harmonic, sources.length);
+    }
+
+    /**
+     * BFS buffers and score accumulators of one thread.
+     */
+    private final class Worker {
+        final int[] distance = new int[links.size()];
+        final int[] order = new int[links.size()];
+        final double[] paths = new double[links.size()];
+        final double[] delta = new double[links.size()];
+        final double[] dependency = new double[actors];
+        final double[] harmonic = new double[actors];
+        final long[] distanceSum = new long[actors];
+        final int[] reached = new int[actors];
+
+        Worker() {
+            Arrays.fill(distance, -1);
+        }
+
+        void run(int source) {
+            int head = 0, tail = 0;
+            order[tail++] = source;
+            distance[source] = 0;
+            paths[source] = 1;
+            while (head < tail) {
+                final int v = order[head++];
+                final int dv = distance[v];
+                if (v < actors && v != source) {
+                    final int d = dv / hop;
+                    distanceSum[v] += d;
+                    ++reached[v];
+                    harmonic[v] += 1.0 / d;
+                }
+                for (int i = links.begin(v), end = links.end(v); i < end; ++i) {
+                    final int w = links.target(i);
+                    if (distance[w] < 0) {
+                        distance[w] = dv + 1;
+                        order[tail++] = w;
+                    }
+                    if (distance[w] == dv + 1) {
+                        paths[w] += paths[v];
+                    }
+                }
+            }
+            for (int i = tail - 1; i > 0; --i) {
+                final int w = order[i];
+                final double share = ((w < actors ? 1 : 0) + delta[w]) / paths[w];
+                final int parent = distance[w] - 1;
+                for (int j = links.begin(w), end = links.end(w); j < end; ++j) {
+                    final int v = links.target(j);
+                    if (distance[v] == parent) {
+                        delta[v] += paths[v] * share;
+                    }
+                }
+                if (w < actors) {
+                    dependency[w] += delta[w];
+                }
+            }
+            for (int i = 0; i < tail; ++i) {
+                final int v = order[i];
+                distance[v] = -1;
+                paths[v] = 0;
+                delta[v] = 0;
+            }
+        }
+
+        Worker add(Worker other) {
+            for (int u = 0; u < actors; ++u) {
+                dependency[u] += other.dependency[u];
+                harmonic[u] += other.harmonic[u];
+                distanceSum[u] += other.distanceSum[u];
+                reached[u] += other.reached[u];
+            }
+            return this;
+        }
+    }
+
+    /**
+     * @return The k actors of highest score, best first, ties by id
+     */
+    static int[] top(double[] scores, int k) {
+        k = Math.max(0, Math.min(k, scores.length));
+        // Min-heap of the best k so far, worst at the root
+        final int[] heap = new int[k];
+        int count = 0;
+        for (int u = 0; u < scores.length; ++u) {
+            if (count < k) {
+                heap[count] = u;
+                siftUp(scores, heap, count++);
+            } else if (k > 0 && better(scores, u, heap[0])) {
+                heap[0] = u;
+                siftDown(scores, heap, count);
+            }
+        }
+        final int[] ret = new int[k];
+        while (count > 0) {
+            ret[--count] = heap[0];
+            heap[0] = heap[count];
+            siftDown(scores, heap, count);
+        }
+        return ret;
+    }
+
+    private static boolean better(double[] scores, int u, int v) {
+        return scores[u] > scores[v] || (scores[u] == scores[v] && u < v);
+    }
+
+    private static void siftUp(double[] scores, int[] heap, int i) {
+        while (i > 0 && better(scores, heap[(i - 1) / 2], heap[i])) {
+            final int parent = (i - 1) / 2;
+            final int t = heap[i];
+            heap[i] = heap[parent];
+            heap[parent] = t;
+            i = parent;
+        }
+    }
+
+    private static void siftDown(double[] scores, int[] heap, int size) {
+        int i = 0;
+        while (true) {
+            int worst = i;
+            final int left = 2 * i + 1, right = left + 1;
+            if (left < size && better(scores, heap[worst], heap[left])) {
+                worst = left;
+            }
+            if (right < size && better(scores, heap[worst], heap[right])) {
+                worst = right;
+            }
+            if (worst == i) {
+                return;
+            }
+            final int t = heap[i];
+            heap[i] = heap[worst];
+            heap[worst] = t;
+            i = worst;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+import java.util.Arrays;
+
+/**
+ * The distinct co-stars of one actor at a time in a bipartite network,
+ * found, and the movies shared with each of them, shared, counted in one
+ * pass over the casts of the actor's movies with no sort. Counters are
+ * stamped with an epoch per actor counted, and those with an older stamp
+ * count as zero, so they are never cleared. An instance takes two arrays
+ * the size of the actors and serves one thread.
+ */
+final class CoStars {
+    private final int[] stamp;
+    final int[] shared;
+    int[] found = new int[16];
+    int size = 0;
+    private int epoch = 0;
+
+    CoStars(int actors) {
+        stamp = new int[actors];
+        shared = new int[actors];
+    }
+
+    void count(CsrGraph links, int u) {
+        ++epoch;
+        size = 0;
+        for (int i = links.begin(u), end = links.end(u); i < end; ++i) {
+            final int movie = links.target(i);
+            for (int j = links.begin(movie), jEnd = links.end(movie); j < jEnd; ++j) {
+                final int w = links.target(j);
+                if (w == u) {
+                    continue;
+                }
+                if (stamp[w] != epoch) {
+                    stamp[w] = epoch;
+                    shared[w] = 0;
+                    if (size == found.length) {
+                        found = Arrays.copyOf(found, size * 2);
+                    }
+                    found[size++] = w;
+                }
+                ++shared[w];
+            }
+        }
+    }
+}
@@ -0,0 +1,408 @@
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+/**
+ * Communities of the actors by label propagation (Raghavan et al.), run in
+ * parallel in the manner of PLP (Staudt and Meyerhenke). Every node starts
+ * with a label of its own and repeatedly adopts the label that weighs most
+ * among its neighbors, until almost no label changes. Workers sweep ranges
+ * of nodes and write the labels in place into one shared int array, so later
+ * nodes already see the labels of earlier ones, and a node is only looked at
+ * again once a neighbor has changed. In bipartite mode movies take part as
+ * nodes: a movie takes the label most of its cast hold, and an actor the
+ * label of their movies that weighs most, each movie weighing its cast size,
+ * which tracks the co-stars it gives them.
+ * <p>
+ * Communities are numbered by decreasing size. Modularity and the summary
+ * graph are taken over the co-star graph, two actors being linked once per
+ * movie they share, which the bipartite mode gets from the casts without
+ * expanding them, so both modes score alike.
+ */
+final class Communities {
+    private static final int MAX_ROUNDS = 64;
+    /**
+     * Propagation stops once a round changes fewer than this fraction of
+     * the nodes.
+     */
+    private static final double SETTLED = 1e-3;
+    private static final int GRAIN = 1 << 12;
+
+    private final CsrGraph links;
+    private final int actors;
+    private final boolean bipartite;
+    /**
+     * Community of every actor.
+     */
+    private final int[] community;
+    /**
+     * sizes[c] is the number of actors in community c, non-increasing.
+     */
+    private final int[] sizes;
+    private final int rounds;
+    private final double modularity;
+    private volatile CsrGraph summary;
+
+    private Communities(CsrGraph links, int actors, int[] community, int[] sizes, int rounds) {
+        this.links = links;
+        this.actors = actors;
+        this.bipartite = links.size() > actors;
+        this.community = community;
+        this.sizes = sizes;
+        this.rounds = rounds;
+        this.modularity = bipartite ? bipartiteModularity() : cliqueModularity();
+    }
+
+    /**
+     * @param actors Nodes below actors are actors, any others are movies
+     * @param token Checked before every range of nodes
+     */
+    static Communities of(CsrGraph links, int actors, CancellationToken token) {
+        final int n = links.size();
+        final int[] label = new int[n];
+        final boolean[] active = new boolean[n];
+        for (int u = 0; u < n; ++u) {
+            label[u] = u;
+            active[u] = links.degree(u) > 0;
+        }
+        // Ids follow debut order, along which one label would sweep through
+        // overlapping casts in a single pass, so nodes go in blocks of 64
+        // taken in shuffled order, which keeps most of the locality
+        final int blocks = (n + 63) >>> 6;
+        final int[] shuffled = new int[blocks];
+        final Random random = new Random(n);
+        for (int i = 0; i < blocks; ++i) {
+            final int j = random.nextInt(i + 1);
+            shuffled[i] = shuffled[j];
+            shuffled[j] = i;
+        }
+        final int[] order = new int[n];
+        for (int i = 0, k = 0; i < blocks; ++i) {
+            for (int u = shuffled[i] << 6, end = Math.min(n, u + 64); u < end; ++u) {
+                order[k++] = u;
+            }
+        }
+        final int chunks = (n + GRAIN - 1) / GRAIN;
+        final int threads = Math.max(1, Math.min(chunks, Runtime.getRuntime().availableProcessors()));
+        final Propagation[] workers = new Propagation[threads];
+        for (int t = 0; t < threads; ++t) {
+            workers[t] = new Propagation(links, label, active, actors);
+        }
+        int round = 0;
+        for (long changed = n; round < MAX_ROUNDS && changed > SETTLED * n; ++round) {
+            final AtomicInteger next = new AtomicInteger();
+            final int seed = round;
+            changed = IntStream.range(0, threads).parallel()
+                    .mapToLong(t -> {
+                        final Propagation worker = workers[t];
+                        worker.seed = seed;
+                        worker.changed = 0;
+                        for (int c; (c = next.getAndIncrement()) < chunks; ) {
+                            token.check();
+                            for (int i = c * GRAIN, end = Math.min(n, i + GRAIN); i < end; ++i) {
+                                worker.update(order[i]);
+                            }
+                        }
+                        return worker.changed;
+                    })
+                    .sum();
+        }
+        // Number labels by how many actors hold them, largest first
+        final int[] count = new int[n];
+        for (int u = 0; u < actors; ++u) {
+            ++count[label[u]];
+        }
+        final long[] bySize = new long[n];
+        int labels = 0;
+        for (int l = 0; l < n; ++l) {
+            if (count[l] > 0) {
+                bySize[labels++] = (long) (actors - count[l]) << 32 | l;
+            }
+        }
+        Arrays.sort(bySize, 0, labels);
+        final int[] id = new int[n];
+        final int[] sizes = new int[labels];
+        for (int c = 0; c < labels; ++c) {
+            final int l = (int) bySize[c];
+            id[l] = c;
+            sizes[c] = count[l];
+        }
+        final int[] community = new int[actors];
+        for (int u = 0; u < actors; ++u) {
+            community[u] = id[label[u]];
+        }
+        return new Communities(links, actors, community, sizes, round);
+    }
+
+    /**
+     * Label weights of one worker, indexed by label and cleared after every
+     * node, and the labels it changed in the current round.
+     */
+    private static final class Propagation {
+        final CsrGraph links;
+        final int[] label;
+        final boolean[] active;
+        /**
+         * Nodes from here on are movies, if there are any.
+         */
+        final int actors;
+        final boolean bipartite;
+        final long[] weight;
+        final int[] touched;
+        int seed;
+        long changed;
+
+        Propagation(CsrGraph links, int[] label, boolean[] active, int actors) {
+            this.links = links;
+            this.label = label;
+            this.active = active;
+            this.actors = actors;
+            this.bipartite = links.size() > actors;
+            weight = new long[label.length];
+            touched = new int[label.length];
+        }
+
+        void update(int u) {
+            if (!active[u]) {
+                return;
+            }
+            active[u] = false;
+            final int begin = links.begin(u), end = links.end(u);
+            final boolean castVotes = bipartite && u < actors;
+            int labels = 0;
+            for (int i = begin; i < end; ++i) {
+                final int v = links.target(i);
+                final int l = label[v];
+                if (weight[l] == 0) {
+                    touched[labels++] = l;
+                }
+                weight[l] += castVotes ? links.degree(v) : links.weight(i);
+            }
+            // Keep the current label among the heaviest, otherwise break
+            // ties by a hash of node, label and round: one order shared by
+            // every node would let a single label win all ties and flood
+            // the graph
+            final int current = label[u];
+            int best = current;
+            long most = weight[current];
+            for (int k = 0; k < labels; ++k) {
+                final int l = touched[k];
+                if (weight[l] > most || weight[l] == most && best != current && mix(u, l) > mix(u, best)) {
+                    best = l;
+                    most = weight[l];
+                }
+                weight[l] = 0;
+            }
+            if (best != current) {
+                label[u] = best;
+                ++changed;
+                for (int i = begin; i < end; ++i) {
+                    active[links.target(i)] = true;
+                }
+            }
+        }
+
+        private int mix(int u, int l) {
+            int h = (u * 0x9E3779B9 ^ l) * 0x85EBCA6B ^ seed;
+            h = (h ^ h >>> 15) * 0xC2B2AE35;
+            return h ^ h >>> 16;
+        }
+    }
+
+    int community(int u) {
+        return community[u];
+    }
+
+    int count() {
+        return sizes.length;
+    }
+
+    int size(int c) {
+        return sizes[c];
+    }
+
+    /**
+     * @return Rounds of propagation until the labels settled
+     */
+    int rounds() {
+        return rounds;
+    }
+
+    /**
+     * @return Newman's modularity of the communities in the co-star graph,
+     * between -1/2 and 1; 0 for a graph without edges
+     */
+    double modularity() {
+        return modularity;
+    }
+
+    /**
+     * Q is the fraction of co-star links inside communities, less the
+     * fraction expected if links were rewired keeping every actor's degree:
+     * the sum over communities of (K_c / 2W)^2, where K_c totals the degrees
+     * of community c and 2W all of them.
+     */
+    private double cliqueModularity() {
+        final long[] total = new long[sizes.length];
+        long inside = 0, all = 0;
+        for (int u = 0; u < actors; ++u) {
+            final int c = community[u];
+            for (int i = links.begin(u), end = links.end(u); i < end; ++i) {
+                final int w = links.weight(i);
+                total[c] += w;
+                if (community[links.target(i)] == c) {
+                    inside += w;
+                }
+            }
+        }
+        for (long k : total) {
+            all += k;
+        }
+        return modularity(inside, all, total);
+    }
+
+    /**
+     * A movie of s actors links s(s - 1) ordered pairs of co-stars, of which
+     * n(n - 1) fall inside each community holding n of them, and adds s - 1
+     * to the degree of each of its actors.
+     */
+    private double bipartiteModularity() {
+        final long[] total = new long[sizes.length];
+        final int[] held = new int[sizes.length];
+        long inside = 0, all = 0;
+        for (int m = actors; m < links.size(); ++m) {
+            final int begin = links.begin(m), end = links.end(m);
+            final long s = end - begin;
+            all += s * (s - 1);
+            for (int i = begin; i < end; ++i) {
+                final int c = community[links.target(i)];
+                total[c] += s - 1;
+                inside += 2L * held[c]++;
+            }
+            for (int i = begin; i < end; ++i) {
+                held[community[links.target(i)]] = 0;
+            }
+        }
+        return modularity(inside, all, total);
+    }
+
+    private static double modularity(long inside, long all, long[] total) {
+        if (all == 0) {
+            return 0;
+        }
+        double expected = 0;
+        for (long k : total) {
+            expected += (double) k / all * k / all;
+        }
+        return (double) inside / all - expected;
+    }
+
+    /**
+     * The community-level graph: node c is community c, and the weight of
+     * the edge between two communities counts the co-star links between
+     * their actors. Built on first use.
+     */
+    CsrGraph summary() {
+        CsrGraph ret = summary;
+        if (ret == null) {
+            synchronized (this) {
+                ret = summary;
+                if (ret == null) {
+                    summary = ret = buildSummary();
+                }
+            }
+        }
+        return ret;
+    }
+
+    private CsrGraph buildSummary() {
+        final int k = sizes.length;
+        // Actors grouped by community
+        final int[] start = new int[k + 1];
+        for (int u = 0; u < actors; ++u) {
+            ++start[community[u] + 1];
+        }
+        for (int c = 0; c < k; ++c) {
+            start[c + 1] += start[c];
+        }
+        final int[] members = new int[actors];
+        final int[] fill = Arrays.copyOf(start, k);
+        for (int u = 0; u < actors; ++u) {
+            members[fill[community[u]]++] = u;
+        }
+        final long[] weight = new long[k];
+        final int[] touched = new int[k];
+        // In bipartite mode, the communities of each movie's cast with
+        // their head counts, as pairs castPairs[e], castPairs[e + 1]
+        final int movies = links.size() - actors;
+        final int[] castStart = new int[movies + 1];
+        int[] castPairs = new int[bipartite ? Math.max(16, movies) : 0];
+        final int[] held = new int[k];
+        for (int m = 0, used = 0; m < movies; ++m) {
+            final int begin = links.begin(actors + m), end = links.end(actors + m);
+            if (used + 2 * (end - begin) > castPairs.length) {
+                castPairs = Arrays.copyOf(castPairs, Math.max(castPairs.length * 2, used + 2 * (end - begin)));
+            }
+            final int first = used;
+            for (int i = begin; i < end; ++i) {
+                final int c = community[links.target(i)];
+                if (held[c]++ == 0) {
+                    castPairs[used] = c;
+                    used += 2;
+                }
+            }
+            for (int e = first; e < used; e += 2) {
+                castPairs[e + 1] = held[castPairs[e]];
+                held[castPairs[e]] = 0;
+            }
+            castStart[m + 1] = used;
+        }
+        final int[] offsets = new int[k + 1];
+        int[] targets = new int[Math.max(16, k)];
+        int[] weights = new int[targets.length];
+        int edges = 0;
+        for (int c = 0; c < k; ++c) {
+            int count = 0;
+            for (int j = start[c]; j < start[c + 1]; ++j) {
+                final int u = members[j];
+                for (int i = links.begin(u), end = links.end(u); i < end; ++i) {
+                    if (bipartite) {
+                        // Every co-star held by community d in this movie
+                        final int m = links.target(i) - actors;
+                        for (int e = castStart[m]; e < castStart[m + 1]; e += 2) {
+                            count = add(weight, touched, count, c, castPairs[e], castPairs[e + 1]);
+                        }
+                    } else {
+                        count = add(weight, touched, count, c, community[links.target(i)], links.weight(i));
+                    }
+                }
+            }
+            Arrays.sort(touched, 0, count);
+            if (edges + count > targets.length) {
+                targets = Arrays.copyOf(targets, Math.max(targets.length * 2, edges + count));
+                weights = Arrays.copyOf(weights, targets.length);
+            }
+            for (int j = 0; j < count; ++j) {
+                final int d = touched[j];
+                targets[edges] = d;
+                weights[edges++] = (int) Math.min(Integer.MAX_VALUE, weight[d]);
+                weight[d] = 0;
+            }
+            offsets[c + 1] = edges;
+        }
+        return new CsrGraph(IntArray.of(offsets), IntArray.of(Arrays.copyOf(targets, edges)),
+                IntArray.of(Arrays.copyOf(weights, edges)), null);
+    }
+
+    private static int add(long[] weight, int[] touched, int count, int c, int d, long w) {
+        if (d == c) {
+            return count;
+        }
+        if (weight[d] == 0) {
+            touched[count++] = d;
+        }
+        weight[d] += w;
+        return count;
+    }
+}
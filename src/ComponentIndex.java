@@ -0,0 +1,174 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Connected components of the actors, numbered by decreasing size so that
+ * component 0 is the giant one. Two actors have a path between them exactly
+ * when their component ids match, which answers unreachable pairs without a
+ * search. A movie node joins its whole cast, so the bipartite and co-star
+ * graphs give the same components.
+ */
+final class ComponentIndex {
+    private final IntArray component;
+    /**
+     * sizes[c] is the number of actors in component c, non-increasing.
+     */
+    private final int[] sizes;
+    /**
+     * Actors grouped by component; those of c are members[start[c]] to
+     * members[start[c + 1] - 1]. Built on first use.
+     */
+    private volatile int[] members;
+    private int[] start;
+
+    /**
+     * @param component Component id of every actor, numbered by decreasing
+     * size
+     */
+    ComponentIndex(IntArray component) {
+        this.component = component;
+        int count = 0;
+        for (int u = 0, n = component.length(); u < n; ++u) {
+            count = Math.max(count, component.get(u) + 1);
+        }
+        sizes = new int[count];
+        for (int u = 0, n = component.length(); u < n; ++u) {
+            ++sizes[component.get(u)];
+        }
+    }
+
+    /**
+     * Finds the components with one union-find pass over the edges.
+     * @param actors Nodes below actors are actors, any others are movies
+     */
+    static ComponentIndex of(CsrGraph links, int actors) {
+        final int nodes = links.size();
+        final int[] parent = new int[nodes];
+        for (int u = 0; u < nodes; ++u) {
+            parent[u] = u;
+        }
+        for (int u = 0; u < nodes; ++u) {
+            for (int i = links.begin(u), end = links.end(u); i < end; ++i) {
+                final int v = links.target(i);
+                if (v > u) {
+                    union(parent, u, v);
+                }
+            }
+        }
+        // Number roots by how many actors they hold, largest first
+        final int[] count = new int[nodes];
+        for (int u = 0; u < actors; ++u) {
+            ++count[find(parent, u)];
+        }
+        int roots = 0;
+        for (int u = 0; u < nodes; ++u) {
+            if (count[u] > 0) {
+                ++roots;
+            }
+        }
+        final long[] order = new long[roots];
+        roots = 0;
+        for (int u = 0; u < nodes; ++u) {
+            if (count[u] > 0) {
+                order[roots++] = (long) (actors - count[u]) << 32 | u;
+            }
+        }
+        Arrays.sort(order);
+        final int[] label = count;
+        for (int c = 0; c < order.length; ++c) {
+            label[(int) order[c]] = c;
+        }
+        final int[] ids = new int[actors];
+        for (int u = 0; u < actors; ++u) {
+            ids[u] = label[find(parent, u)];
+        }
+        return new ComponentIndex(IntArray.of(ids));
+    }
+
+    private static int find(int[] parent, int u) {
+        while (parent[u] != u) {
+            parent[u] = parent[parent[u]];
+            u = parent[u];
+        }
+        return u;
+    }
+
+    private static void union(int[] parent, int u, int v) {
+        u = find(parent, u);
+        v = find(parent, v);
+        if (u != v) {
+            // Linking by index instead of by rank saves an array; path
+            // halving in find() keeps the trees shallow regardless
+            if (u < v) {
+                parent[v] = u;
+            } else {
+                parent[u] = v;
+            }
+        }
+    }
+
+    int component(int u) {
+        return component.get(u);
+    }
+
+    boolean connected(int u, int v) {
+        return component.get(u) == component.get(v);
+    }
+
+    int count() {
+        return sizes.length;
+    }
+
+    /**
+     * @return The number of actors in component c
+     */
+    int size(int c) {
+        return sizes[c];
+    }
+
+    /**
+     * @return The actors of component c, in increasing order
+     */
+    int[] members(int c) {
+        int[] m = members;
+        if (m == null) {
+            m = group();
+        }
+        return Arrays.copyOfRange(m, start[c], start[c + 1]);
+    }
+
+    /**
+     * @return A random actor of component c
+     */
+    int randomMember(int c, Random random) {
+        int[] m = members;
+        if (m == null) {
+            m = group();
+        }
+        return m[start[c] + random.nextInt(sizes[c])];
+    }
+
+    private synchronized int[] group() {
+        if (members == null) {
+            final int[] begin = new int[sizes.length + 1];
+            for (int c = 0; c < sizes.length; ++c) {
+                begin[c + 1] = begin[c] + sizes[c];
+            }
+            final int[] next = Arrays.copyOf(begin, sizes.length);
+            final int[] grouped = new int[begin[sizes.length]];
+            for (int u = 0; u < grouped.length; ++u) {
+                grouped[next[component.get(u)]++] = u;
+            }
+            start = begin;
+            members = grouped;
+        }
+        return members;
+    }
+
+    /**
+     * @return Component id by actor, for storage
+     */
+    IntArray ids() {
+        return component;
+    }
+}
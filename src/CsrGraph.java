@@ -0,0 +1,579 @@
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Immutable compressed-sparse-row adjacency. The neighbors of node u are
+ * target(begin(u)) .. target(end(u) - 1), stored contiguously so that
+ * traversals walk a flat primitive array instead of chasing list nodes.
+ * Edges may carry an int weight and a year, kept in arrays parallel to the
+ * targets. With years, every segment is sorted by year, so upTo(year) can
+ * drop the later edges of a node by moving the end of its segment.
+ * <p>
+ * merge() adds edges without rewriting the graph: the segments of the nodes
+ * that gain edges are rebuilt in an overflow region addressed after the
+ * base edges, and compact() lays everything out contiguously again.
+ */
+final class CsrGraph {
+    private static final int GRAIN = 1 << 12;
+    private final IntArray offsets;
+    private final IntArray targets;
+    /**
+     * Weight of every edge, or null if all weigh 1.
+     */
+    private final IntArray weights;
+    /**
+     * Year of every edge, non-decreasing within each segment, or null.
+     */
+    private final IntArray years;
+    /**
+     * Begin and end of every segment, or null where they are given by
+     * offsets: begins move when merge relocates a segment, ends also in a
+     * view cut off at some year.
+     */
+    private final IntArray starts;
+    private final IntArray ends;
+    /**
+     * Relocated segments, edge i >= base being entry i - base; null if
+     * nothing was merged. This version uses the first overflowUsed entries.
+     */
+    private final Overflow overflow;
+    private final int overflowUsed;
+    private final int base;
+    private final int nodes;
+    private final long edges;
+    private final boolean view;
+
+    CsrGraph(int[] offsets, int[] targets) {
+        this(IntArray.of(offsets), IntArray.of(targets), null, null);
+    }
+
+    CsrGraph(IntArray offsets, IntArray targets, IntArray weights, IntArray years) {
+        this(offsets, targets, weights, years, null, null, null, 0, offsets.length() - 1, targets.length(), false);
+        if (offsets.length() == 0 || offsets.get(offsets.length() - 1) != targets.length()
+                || (weights != null && weights.length() != targets.length())
+                || (years != null && years.length() != targets.length())) {
+            throw new IllegalArgumentException();
+        }
+    }
+
+    private CsrGraph(IntArray offsets, IntArray targets, IntArray weights, IntArray years, IntArray starts,
+                     IntArray ends, Overflow overflow, int overflowUsed, int nodes, long edges, boolean view) {
+        this.offsets = offsets;
+        this.targets = targets;
+        this.weights = weights;
+        this.years = years;
+        this.starts = starts;
+        this.ends = ends;
+        this.overflow = overflow;
+        this.overflowUsed = overflowUsed;
+        this.base = targets.length();
+        this.nodes = nodes;
+        this.edges = edges;
+        this.view = view;
+    }
+
+    /**
+     * Entries shared by every version merged from one graph. A version may
+     * only append if no other version has appended since it was made.
+     */
+    private static final class Overflow {
+        final int[] targets;
+        final int[] weights;
+        final int[] years;
+        /**
+         * Entries handed out so far, guarded by this.
+         */
+        int used;
+
+        Overflow(int capacity, boolean weighted, boolean dated) {
+            targets = new int[capacity];
+            weights = weighted ? new int[capacity] : null;
+            years = dated ? new int[capacity] : null;
+        }
+    }
+
+    int size() {
+        return nodes;
+    }
+
+    long edgeCount() {
+        return edges;
+    }
+
+    int begin(int u) {
+        return starts == null ? offsets.get(u) : starts.get(u);
+    }
+
+    int end(int u) {
+        return ends == null ? offsets.get(u + 1) : ends.get(u);
+    }
+
+    int target(int i) {
+        return i < base ? targets.get(i) : overflow.targets[i - base];
+    }
+
+    int weight(int i) {
+        return weights == null ? 1 : i < base ? weights.get(i) : overflow.weights[i - base];
+    }
+
+    /**
+     * @return The year of edge i, or Integer.MAX_VALUE if edges have none
+     */
+    int year(int i) {
+        return years == null ? Integer.MAX_VALUE : i < base ? years.get(i) : overflow.years[i - base];
+    }
+
+    int degree(int u) {
+        return end(u) - begin(u);
+    }
+
+    int[] neighbors(int u) {
+        final int from = begin(u), to = end(u);
+        return from < base ? targets.copyOfRange(from, to)
+                : Arrays.copyOfRange(overflow.targets, from - base, to - base);
+    }
+
+    /**
+     * @return The offsets of the base edges, which are all the edges if
+     * isCompact()
+     */
+    IntArray offsets() {
+        return offsets;
+    }
+
+    IntArray targets() {
+        return targets;
+    }
+
+    /**
+     * @return Edge weights, or null if the graph is unweighted
+     */
+    IntArray weights() {
+        return weights;
+    }
+
+    /**
+     * @return Edge years, or null if edges have none
+     */
+    IntArray years() {
+        return years;
+    }
+
+    /**
+     * @return Whether this is a view from upTo, whose arrays hold edges it
+     * leaves out
+     */
+    boolean isView() {
+        return view;
+    }
+
+    /**
+     * @return Whether every segment lies where offsets() says, so that
+     * offsets() and targets() describe the whole graph
+     */
+    boolean isCompact() {
+        return starts == null && ends == null;
+    }
+
+    /**
+     * @return Entries taken up by relocated segments, including the ones
+     * relocated again since, which compact() would reclaim
+     */
+    int relocatedEdges() {
+        return overflowUsed;
+    }
+
+    /**
+     * @return Bytes taken by the arrays of this version, heap or mapped,
+     * counting the whole overflow it uses
+     */
+    long bytes() {
+        final int perEdge = 1 + (weights != null ? 1 : 0) + (years != null ? 1 : 0);
+        return 4L * (offsets.length() + (long) perEdge * (base + overflowUsed)
+                + (starts != null ? starts.length() : 0) + (ends != null ? ends.length() : 0));
+    }
+
+    /**
+     * A view of the edges of year at most year. It shares this graph's
+     * arrays and only stores where each segment now ends, found by binary
+     * search, so slicing costs O(n log d) instead of a copy of the edges.
+     * Nodes keep their ids; those without edges by then have degree 0.
+     * Weights are those of the whole graph, so an edge merged from several
+     * years weighs as much as it does after the last of them.
+     */
+    CsrGraph upTo(int year) {
+        if (years == null) {
+            throw new IllegalStateException("Edges have no years");
+        }
+        final int[] cut = new int[nodes];
+        final long kept = IntStream.range(0, (nodes + GRAIN - 1) / GRAIN).parallel().mapToLong(c -> {
+            long sum = 0;
+            for (int u = c * GRAIN, end = Math.min(nodes, u + GRAIN); u < end; ++u) {
+                int lo = begin(u), hi = end(u);
+                while (lo < hi) {
+                    final int mid = (lo + hi) >>> 1;
+                    if (year(mid) <= year) {
+                        lo = mid + 1;
+                    } else {
+                        hi = mid;
+                    }
+                }
+                cut[u] = lo;
+                sum += lo - begin(u);
+            }
+            return sum;
+        }).sum();
+        return new CsrGraph(offsets, targets, weights, years, starts, IntArray.of(cut), overflow, overflowUsed,
+                nodes, kept, true);
+    }
+
+    /**
+     * Adds the edges of delta in a new version that shares this one's
+     * arrays. The segment of every node that gains edges is copied to the
+     * overflow together with the new edges, where repeated targets merge as
+     * in fromCliques and the segment is sorted by year again; the rest are
+     * left in place. This costs O(n) for the segment bounds plus the size of
+     * the segments moved, and leaves the old copies as dead space until
+     * compact().
+     * @param delta Edges to add, over at least as many nodes as this graph,
+     * with the same kind of weights
+     */
+    CsrGraph merge(CsrGraph delta) {
+        if (view || delta.view) {
+            throw new IllegalArgumentException("Cannot merge views");
+        }
+        final int n = delta.size();
+        if (n < nodes) {
+            throw new IllegalArgumentException("Delta has " + n + " nodes, not " + nodes);
+        }
+        long moved = 0;
+        for (int u = 0; u < n; ++u) {
+            if (delta.degree(u) > 0) {
+                moved += (u < nodes ? degree(u) : 0) + delta.degree(u);
+            }
+        }
+        if (base + overflowUsed + moved > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("Too many edges for a CSR graph: " + (base + overflowUsed + moved));
+        }
+        final Overflow into = reserve((int) moved);
+        final int[] begins = new int[n];
+        final int[] stops = new int[n];
+        for (int u = 0; u < nodes; ++u) {
+            begins[u] = begin(u);
+            stops[u] = end(u);
+        }
+        final Scratch scratch = new Scratch();
+        int write = overflowUsed;
+        long total = edges;
+        for (int u = 0; u < n; ++u) {
+            if (delta.degree(u) == 0) {
+                continue;
+            }
+            int length = 0;
+            if (u < nodes) {
+                for (int i = begin(u), end = end(u); i < end; ++i) {
+                    put(into, write + length++, target(i), weight(i), year(i));
+                }
+            }
+            final int old = length;
+            for (int i = delta.begin(u), end = delta.end(u); i < end; ++i) {
+                put(into, write + length++, delta.target(i), delta.weight(i), delta.year(i));
+            }
+            final int kept = normalize(u, into.targets, into.weights, into.years, write, length, scratch);
+            begins[u] = base + write;
+            stops[u] = base + write + kept;
+            total += kept - old;
+            write += length;
+        }
+        return new CsrGraph(offsets, targets, weights, years, IntArray.of(begins), IntArray.of(stops), into, write,
+                n, total, false);
+    }
+
+    private static void put(Overflow into, int i, int target, int weight, int year) {
+        into.targets[i] = target;
+        if (into.weights != null) {
+            into.weights[i] = weight;
+        }
+        if (into.years != null) {
+            into.years[i] = year;
+        }
+    }
+
+    /**
+     * @return An overflow with room for extra entries after the ones this
+     * version uses, claimed for it: the shared one if no other version has
+     * appended to it and it is large enough, otherwise a copy
+     */
+    private Overflow reserve(int extra) {
+        final long needed = (long) overflowUsed + extra;
+        if (overflow != null) {
+            synchronized (overflow) {
+                if (overflow.used == overflowUsed && needed <= overflow.targets.length) {
+                    overflow.used = (int) needed;
+                    return overflow;
+                }
+            }
+        }
+        final int capacity = (int) Math.min(Integer.MAX_VALUE - 8,
+                Math.max(needed, Math.max(GRAIN, 2L * (overflow == null ? 0 : overflow.targets.length))));
+        final Overflow grown = new Overflow(capacity, weights != null, years != null);
+        if (overflow != null) {
+            System.arraycopy(overflow.targets, 0, grown.targets, 0, overflowUsed);
+            if (grown.weights != null) {
+                System.arraycopy(overflow.weights, 0, grown.weights, 0, overflowUsed);
+            }
+            if (grown.years != null) {
+                System.arraycopy(overflow.years, 0, grown.years, 0, overflowUsed);
+            }
+        }
+        grown.used = (int) needed;
+        return grown;
+    }
+
+    /**
+     * @return This graph if it is stored contiguously, otherwise a copy that
+     * is, without the dead space merges leave and, for a view, without the
+     * edges it leaves out
+     */
+    CsrGraph compact() {
+        return isCompact() ? this : insertNodes(nodes, 0);
+    }
+
+    /**
+     * @return A compact copy with count nodes without edges inserted before
+     * node at, so that every node from at onwards, and every edge to one,
+     * moves up by count
+     */
+    CsrGraph insertNodes(int at, int count) {
+        final int n = nodes + count;
+        final int[] starts = new int[n + 1];
+        long total = 0;
+        for (int u = 0; u < n; ++u) {
+            starts[u] = (int) total;
+            if (u < at || u >= at + count) {
+                total += degree(u < at ? u : u - count);
+            }
+            if (total > Integer.MAX_VALUE - 8) {
+                throw new IllegalStateException("Too many edges for a CSR graph: " + total);
+            }
+        }
+        starts[n] = (int) total;
+        final int[] t = new int[(int) total];
+        final int[] w = weights == null ? null : new int[(int) total];
+        final int[] y = years == null ? null : new int[(int) total];
+        IntStream.range(0, (n + GRAIN - 1) / GRAIN).parallel().forEach(c -> {
+            for (int u = c * GRAIN, end = Math.min(n, u + GRAIN); u < end; ++u) {
+                if (u >= at && u < at + count) {
+                    continue;
+                }
+                final int old = u < at ? u : u - count;
+                for (int i = begin(old), to = end(old), j = starts[u]; i < to; ++i, ++j) {
+                    final int v = target(i);
+                    t[j] = v < at ? v : v + count;
+                    if (w != null) {
+                        w[j] = weight(i);
+                    }
+                    if (y != null) {
+                        y[j] = year(i);
+                    }
+                }
+            }
+        });
+        return new CsrGraph(IntArray.of(starts), IntArray.of(t), w == null ? null : IntArray.of(w),
+                y == null ? null : IntArray.of(y));
+    }
+
+    /**
+     * Expands every clique into pairwise edges without going through an
+     * intermediate edge list: one pass counts degrees, a second pass fills
+     * each node's segment in place. Nodes that share several cliques are
+     * then joined by a single edge weighing the number of cliques shared,
+     * dated to the earliest of them.
+     * @param nodes Number of nodes
+     * @param members Node ids of all cliques, concatenated
+     * @param cliqueOffsets Clique i spans members[cliqueOffsets[i]] .. members[cliqueOffsets[i + 1] - 1]
+     * @param cliqueYears Year of every clique, non-negative
+     * @param cliques Number of cliques
+     */
+    static CsrGraph fromCliques(int nodes, int[] members, int[] cliqueOffsets, int[] cliqueYears, int cliques) {
+        final long[] degree = new long[nodes];
+        for (int c = 0; c < cliques; ++c) {
+            final int k = cliqueOffsets[c + 1] - cliqueOffsets[c];
+            for (int i = cliqueOffsets[c]; i < cliqueOffsets[c + 1]; ++i) {
+                degree[members[i]] += k - 1;
+            }
+        }
+        final int[] offsets = new int[nodes + 1];
+        long total = 0;
+        for (int u = 0; u < nodes; ++u) {
+            offsets[u] = (int) total;
+            total += degree[u];
+            if (total > Integer.MAX_VALUE - 8) {
+                throw new IllegalStateException("Too many edges for a CSR graph: " + total);
+            }
+        }
+        offsets[nodes] = (int) total;
+        final int[] targets = new int[(int) total];
+        final int[] years = new int[(int) total];
+        final int[] cursor = Arrays.copyOf(offsets, nodes);
+        for (int c = 0; c < cliques; ++c) {
+            for (int i = cliqueOffsets[c]; i < cliqueOffsets[c + 1]; ++i) {
+                for (int j = i + 1; j < cliqueOffsets[c + 1]; ++j) {
+                    final int u = members[i];
+                    final int v = members[j];
+                    years[cursor[u]] = cliqueYears[c];
+                    targets[cursor[u]++] = v;
+                    years[cursor[v]] = cliqueYears[c];
+                    targets[cursor[v]++] = u;
+                }
+            }
+        }
+        return collapse(offsets, targets, years);
+    }
+
+    /**
+     * Normalizes every segment as merge() does, then slides them together.
+     * Segments are independent, so they are normalized in parallel; only
+     * sliding them together is sequential.
+     */
+    private static CsrGraph collapse(int[] offsets, int[] targets, int[] years) {
+        final int nodes = offsets.length - 1;
+        final int[] weights = new int[targets.length];
+        Arrays.fill(weights, 1);
+        final int[] unique = new int[nodes];
+        IntStream.range(0, (nodes + GRAIN - 1) / GRAIN).parallel().forEach(c -> {
+            final Scratch scratch = new Scratch();
+            for (int u = c * GRAIN, end = Math.min(nodes, u + GRAIN); u < end; ++u) {
+                unique[u] = normalize(u, targets, weights, years, offsets[u], offsets[u + 1] - offsets[u], scratch);
+            }
+        });
+        int write = 0;
+        for (int u = 0; u < nodes; ++u) {
+            System.arraycopy(targets, offsets[u], targets, write, unique[u]);
+            System.arraycopy(weights, offsets[u], weights, write, unique[u]);
+            System.arraycopy(years, offsets[u], years, write, unique[u]);
+            offsets[u] = write;
+            write += unique[u];
+        }
+        offsets[nodes] = write;
+        return new CsrGraph(IntArray.of(offsets), IntArray.of(Arrays.copyOf(targets, write)),
+                IntArray.of(Arrays.copyOf(weights, write)), IntArray.of(Arrays.copyOf(years, write)));
+    }
+
+    /**
+     * Buffers for normalize, grown as needed.
+     */
+    private static final class Scratch {
+        long[] keys = new long[0];
+        int[] targets = new int[0];
+        int[] weights = new int[0];
+        int[] years = new int[0];
+
+        void fit(int n) {
+            if (keys.length < n) {
+                keys = new long[n];
+                targets = new int[n];
+                weights = new int[n];
+                years = new int[n];
+            }
+        }
+    }
+
+    /**
+     * Merges repeated targets among the n edges of node u that start at
+     * from into one edge, adding up their weights and keeping the earliest
+     * year, drops edges from u to itself, and sorts the rest by year, then
+     * target.
+     * @param w Weights, or null if all weigh 1
+     * @param y Years, or null if edges have none
+     * @return The number of edges left, which start at from
+     */
+    private static int normalize(int u, int[] t, int[] w, int[] y, int from, int n, Scratch s) {
+        s.fit(n);
+        for (int i = 0; i < n; ++i) {
+            s.keys[i] = (long) t[from + i] << 32 | i;
+        }
+        Arrays.sort(s.keys, 0, n);
+        int m = 0;
+        for (int i = 0; i < n; ++i) {
+            final int v = (int) (s.keys[i] >>> 32);
+            final int e = from + (int) s.keys[i];
+            if (v == u) {
+                continue;
+            }
+            final int weight = w == null ? 1 : w[e];
+            final int year = y == null ? 0 : y[e];
+            if (m > 0 && s.targets[m - 1] == v) {
+                s.weights[m - 1] += weight;
+                s.years[m - 1] = Math.min(s.years[m - 1], year);
+            } else {
+                s.targets[m] = v;
+                s.weights[m] = weight;
+                s.years[m++] = year;
+            }
+        }
+        // By year, then by position in target order
+        for (int j = 0; j < m; ++j) {
+            s.keys[j] = (long) s.years[j] << 32 | j;
+        }
+        Arrays.sort(s.keys, 0, m);
+        for (int j = 0; j < m; ++j) {
+            final int k = (int) s.keys[j];
+            t[from + j] = s.targets[k];
+            if (w != null) {
+                w[from + j] = s.weights[k];
+            }
+            if (y != null) {
+                y[from + j] = s.years[k];
+            }
+        }
+        return m;
+    }
+
+    static CsrGraph fromBipartite(int actors, int[] members, int[] cliqueOffsets, int[] cliqueYears, int cliques) {
+        return fromBipartite(actors, 0, members, cliqueOffsets, cliqueYears, cliques);
+    }
+
+    /**
+     * Builds the bipartite actor-movie graph: nodes 0 .. actors - 1 are
+     * actors and node actors + firstClique + c is clique c, so that new
+     * cliques can be numbered after existing ones. Each clique of size k
+     * costs 2k entries instead of the k(k - 1) needed to expand it. Every
+     * edge takes the year of its clique; cliques must come in year order, so
+     * the segments of the actors are sorted by year as they are filled.
+     * @param cliqueYears Year of every clique, non-decreasing
+     */
+    static CsrGraph fromBipartite(int actors, int firstClique, int[] members, int[] cliqueOffsets,
+                                  int[] cliqueYears, int cliques) {
+        final int first = actors + firstClique;
+        final int nodes = first + cliques;
+        final int[] offsets = new int[nodes + 1];
+        for (int i = 0; i < cliqueOffsets[cliques]; ++i) {
+            ++offsets[members[i] + 1];
+        }
+        for (int u = 0; u < first; ++u) {
+            offsets[u + 1] += offsets[u];
+        }
+        for (int c = 0; c < cliques; ++c) {
+            if (c > 0 && cliqueYears[c] < cliqueYears[c - 1]) {
+                throw new IllegalArgumentException("Cliques out of year order at " + c);
+            }
+            offsets[first + c + 1] = offsets[first + c] + cliqueOffsets[c + 1] - cliqueOffsets[c];
+        }
+        if (offsets[nodes] < 0 || offsets[nodes] > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("Too many edges for a CSR graph");
+        }
+        final int[] targets = new int[offsets[nodes]];
+        final int[] years = new int[offsets[nodes]];
+        final int[] cursor = Arrays.copyOf(offsets, actors);
+        for (int c = 0; c < cliques; ++c) {
+            for (int i = cliqueOffsets[c]; i < cliqueOffsets[c + 1]; ++i) {
+                years[cursor[members[i]]] = cliqueYears[c];
+                targets[cursor[members[i]]++] = first + c;
+            }
+            Arrays.fill(years, offsets[first + c], offsets[first + c + 1], cliqueYears[c]);
+        }
+        System.arraycopy(members, 0, targets, offsets[first], cliqueOffsets[cliques]);
+        return new CsrGraph(IntArray.of(offsets), IntArray.of(targets), null, IntArray.of(years));
+    }
+}
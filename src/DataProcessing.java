@@ -1,43 +1,402 @@
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.*;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
 
-import com.fasterxml.jackson.databind.JsonMappingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
 
+/**
+ * Streams the data set into an ActorsNetwork.Builder through three stages:
+ * the calling thread decompresses and cuts the input into batches of whole
+ * lines, a pool of workers parses the batches with a streaming JsonParser,
+ * and each parsed batch is handed to the builder in input order. At most
+ * QUEUED_BATCHES batches are in flight, which bounds memory use.
+ * <p>
+ * The data set is read from the "actors.data" system property, which may be
+ * a URL or a local path, and defaults to the Oracle of Bacon dump.
+ * <p>
+ * Only the fields asked for are decoded: the others are skipped token by
+ * token without building strings, and reach Movies as null titles,
+ * UNKNOWN_YEAR or empty casts. Actor names are interned through one
+ * SymbolTable shared by the workers, so a name listed by a thousand casts
+ * is decoded from the parser's buffer a thousand times but allocated once.
+ */
 final class DataProcessing {
     static final private String url = "https://oracleofbacon.org/data.txt.bz2";
-    static final private ObjectMapper mapper = new ObjectMapper();
-    static private URL dataSet = null;
-    final private List<Util.MovieInfo> movieInfos = new LinkedList<>();
+    static final private JsonFactory factory = new JsonFactory();
+    static final private int BATCH_BYTES = 1 << 20;
+    static final private int WORKERS = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    static final private int QUEUED_BATCHES = 2 * WORKERS;
+    static final private int TIMEOUT_MS = 10_000;
+    static final private Batch END = new Batch(-1, new byte[0], 0);
+    private final URL dataSet;
+    private final Set<Field> fields;
+    private final SymbolTable names = new SymbolTable();
 
     DataProcessing() {
-        if (dataSet == null) {
+        this(System.getProperty("actors.data", url));
+    }
+
+    DataProcessing(String source) {
+        this(source, EnumSet.allOf(Field.class));
+    }
+
+    /**
+     * @param fields The fields of each movie to read
+     */
+    DataProcessing(String source, Set<Field> fields) {
+        this.fields = EnumSet.copyOf(fields);
+        try {
+            dataSet = source.contains("://") ? new URL(source) : Paths.get(source).toUri().toURL();
+        } catch (MalformedURLException e) {
+            throw new IllegalArgumentException(source, e);
+        }
+    }
+
+    /**
+     * Describes the current version of the data set, so that snapshots built
+     * from an older version can be told apart.
+     * @throws IOException If the data set cannot be reached, or a server
+     * answers with anything but success
+     */
+    String sourceTag() throws IOException {
+        final URLConnection connection = dataSet.openConnection();
+        connection.setConnectTimeout(TIMEOUT_MS);
+        connection.setReadTimeout(TIMEOUT_MS);
+        if (connection instanceof HttpURLConnection) {
+            final HttpURLConnection http = (HttpURLConnection) connection;
+            http.setRequestMethod("HEAD");
             try {
-                dataSet = new URL(url);
-            } catch (MalformedURLException ignored) {
+                final int status = http.getResponseCode();
+                if (status / 100 != 2) {
+                    throw new IOException(dataSet + " answered " + status);
+                }
+                return dataSet + " " + http.getContentLengthLong() + " " + http.getLastModified();
+            } finally {
+                http.disconnect();
+            }
+        }
+        connection.connect();
+        try {
+            return dataSet + " " + connection.getContentLengthLong() + " " + connection.getLastModified();
+        } finally {
+            connection.getInputStream().close();
+        }
+    }
+
+    /**
+     * Opens the snapshot if it was built from the current data set, and
+     * otherwise reads the data set and writes a fresh snapshot. When the data
+     * set cannot be reached, any existing snapshot is used as is.
+     */
+    ActorsNetwork loadNetwork(Path snapshot) throws IOException {
+        String tag;
+        try {
+            tag = sourceTag();
+        } catch (IOException e) {
+            tag = null;
+        }
+        try {
+            final ActorsNetwork g = ActorsNetwork.loadSnapshot(snapshot, tag);
+            if (g != null) {
+                return g;
+            }
+        } catch (IOException e) {
+            System.err.println("Rebuilding the network, snapshot " + snapshot + " is unreadable: " + e);
+        }
+        final ActorsNetwork.Builder builder = new ActorsNetwork.Builder();
+        acquireData(builder);
+        final ActorsNetwork g = builder.buildBipartite();
+        if (tag != null) {
+            g.saveSnapshot(snapshot, tag);
+        }
+        return g;
+    }
+
+    /**
+     * State of one acquireData call, shared by its workers: the next batch
+     * to hand over and the first failure, after which the rest of the
+     * batches are drained unparsed.
+     */
+    private static final class Run {
+        final Movies movies;
+        final Metrics.Ingest ingest;
+        final Object commitLock = new Object();
+        long nextCommit = 0;
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        Run(Movies movies, Metrics.Ingest ingest) {
+            this.movies = movies;
+            this.ingest = ingest;
+        }
+
+        boolean failed() {
+            return failure.get() != null;
+        }
+
+        void fail(Throwable e) {
+            failure.compareAndSet(null, e);
+        }
+    }
+
+    private static final class Batch {
+        final long seq;
+        final byte[] data;
+        final int length;
+
+        Batch(long seq, byte[] data, int length) {
+            this.seq = seq;
+            this.data = data;
+            this.length = length;
+        }
+    }
+
+    /**
+     * The fields of Util.MovieInfo the network can use.
+     */
+    enum Field {
+        TITLE, YEAR, CAST
+    }
+
+    /**
+     * Receives the movies of the data set in input order.
+     */
+    interface Movies {
+        void add(String title, int year, String[] cast);
+    }
+
+    void acquireData(ActorsNetwork.Builder builder) throws IOException {
+        acquireData(builder::addMovie);
+    }
+
+    /**
+     * Reads the data set, which may be compressed with bzip2 or not, into
+     * movies.
+     */
+    void acquireData(Movies movies) throws IOException {
+        final Metrics.Ingest ingest = Metrics.ingest(dataSet.toString());
+        try {
+            acquireData(movies, ingest);
+        } finally {
+            ingest.finish();
+        }
+    }
+
+    private void acquireData(Movies movies, Metrics.Ingest ingest) throws IOException {
+        final Run run = new Run(movies, ingest);
+        final BlockingQueue<Batch> queue = new ArrayBlockingQueue<>(QUEUED_BATCHES);
+        final ExecutorService workers = Executors.newFixedThreadPool(WORKERS);
+        for (int i = 0; i < WORKERS; ++i) {
+            workers.execute(() -> parseBatches(queue, run));
+        }
+        try (InputStream stream = decompress(new BufferedInputStream(dataSet.openStream(), 1 << 16))) {
+            splitLines(stream, queue, run);
+        } catch (IOException | RuntimeException e) {
+            run.fail(e);
+        } finally {
+            for (int i = 0; i < WORKERS; ++i) {
+                enqueue(queue, END, run);
             }
+            workers.shutdown();
+        }
+        try {
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+        final Throwable e = run.failure.get();
+        if (e instanceof IOException) {
+            throw (IOException) e;
+        } else if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        } else if (e instanceof Error) {
+            throw (Error) e;
+        } else if (e != null) {
+            throw new IOException(e);
         }
     }
 
-    void acquireData() throws IOException {
-        URLConnection urlConnection = dataSet.openConnection();
-        InputStream inputStream = urlConnection.getInputStream();
-        BZip2CompressorInputStream stream = new BZip2CompressorInputStream(inputStream);
-        try (Scanner scanner = new Scanner(stream)) {
-            while (scanner.hasNextLine()) {
-                Util.MovieInfo info = mapper.readValue(scanner.nextLine(), Util.MovieInfo.class);
-                movieInfos.add(info);
+    private static InputStream decompress(BufferedInputStream in) throws IOException {
+        final byte[] signature = new byte[3];
+        in.mark(signature.length);
+        final int read = in.readNBytes(signature, 0, signature.length);
+        in.reset();
+        return BZip2CompressorInputStream.matches(signature, read) ? new BZip2CompressorInputStream(in) : in;
+    }
+
+    private static void splitLines(InputStream stream, BlockingQueue<Batch> queue, Run run) throws IOException {
+        byte[] buffer = new byte[BATCH_BYTES];
+        int filled = 0;
+        long seq = 0;
+        int read;
+        while (!run.failed() && (read = stream.read(buffer, filled, buffer.length - filled)) != -1) {
+            filled += read;
+            if (filled < buffer.length) {
+                continue;
+            }
+            int cut = filled;
+            while (cut > 0 && buffer[cut - 1] != '\n') {
+                --cut;
+            }
+            if (cut == 0) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                continue;
             }
-        } catch (JsonMappingException e) {
-            throw new RuntimeException(e);
+            final byte[] next = new byte[Math.max(BATCH_BYTES, buffer.length)];
+            System.arraycopy(buffer, cut, next, 0, filled - cut);
+            enqueue(queue, new Batch(seq++, buffer, cut), run);
+            filled -= cut;
+            buffer = next;
+        }
+        if (filled > 0) {
+            enqueue(queue, new Batch(seq, buffer, filled), run);
         }
     }
 
-    List<String[]> getAllCasts() {
-        return movieInfos.stream().map(i -> i.cast).collect(Collectors.toList());
+    private static void enqueue(BlockingQueue<Batch> queue, Batch batch, Run run) {
+        try {
+            while (!queue.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+                if (run.failed() && batch != END) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            run.fail(new IOException(e));
+        }
+    }
+
+    /**
+     * Parses and hands over batches until END. A worker never stops early,
+     * even after a failure, so the queue keeps draining and every END is
+     * taken.
+     */
+    private void parseBatches(BlockingQueue<Batch> queue, Run run) {
+        final List<String> titles = new ArrayList<>();
+        final List<Integer> years = new ArrayList<>();
+        final List<String[]> casts = new ArrayList<>();
+        try {
+            Batch batch;
+            while ((batch = queue.take()) != END) {
+                if (run.failed()) {
+                    continue;
+                }
+                titles.clear();
+                years.clear();
+                casts.clear();
+                final Metrics.Batch event = Metrics.batch();
+                try {
+                    parseLines(batch, titles, years, casts);
+                } catch (IOException e) {
+                    run.ingest.failed();
+                    run.fail(e);
+                } catch (RuntimeException e) {
+                    run.ingest.failed();
+                    run.fail(new IOException(e));
+                }
+                event.finish(titles.size(), batch.length);
+                run.ingest.batch(titles.size(), batch.length);
+                commit(batch.seq, run, titles, years, casts);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            run.fail(new IOException(e));
+        }
+    }
+
+    /**
+     * Parses every line of a batch with one parser, since the lines are
+     * simply a sequence of root-level JSON objects.
+     */
+    private void parseLines(Batch batch, List<String> titles, List<Integer> years, List<String[]> casts)
+            throws IOException {
+        final boolean wantTitle = fields.contains(Field.TITLE), wantYear = fields.contains(Field.YEAR),
+                wantCast = fields.contains(Field.CAST);
+        final List<String> cast = new ArrayList<>();
+        try (JsonParser parser = factory.createParser(batch.data, 0, batch.length)) {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                if (token != JsonToken.START_OBJECT) {
+                    throw new IOException("Expected a movie object at " + parser.getCurrentLocation());
+                }
+                String title = null;
+                int year = ActorsNetwork.UNKNOWN_YEAR;
+                cast.clear();
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    final String field = parser.getCurrentName();
+                    final JsonToken value = parser.nextToken();
+                    if (wantTitle && "title".equals(field) && value == JsonToken.VALUE_STRING) {
+                        title = parser.getText();
+                    } else if (wantYear && "year".equals(field) && value == JsonToken.VALUE_STRING) {
+                        year = parseYear(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+                    } else if (wantYear && "year".equals(field) && value == JsonToken.VALUE_NUMBER_INT) {
+                        year = parser.getIntValue() >= 0 ? parser.getIntValue() : ActorsNetwork.UNKNOWN_YEAR;
+                    } else if (wantCast && "cast".equals(field) && value == JsonToken.START_ARRAY) {
+                        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                            if (token != JsonToken.VALUE_STRING) {
+                                throw new IOException("Expected an actor name at " + parser.getCurrentLocation());
+                            }
+                            cast.add(names.intern(parser.getTextCharacters(), parser.getTextOffset(),
+                                    parser.getTextLength()));
+                        }
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                titles.add(title);
+                years.add(year);
+                casts.add(cast.toArray(new String[0]));
+            }
+        }
+    }
+
+    /**
+     * @return The year a release date such as "1994" or "1994-07-06" starts
+     * with, or UNKNOWN_YEAR if it does not start with digits
+     */
+    private static int parseYear(char[] text, int offset, int length) {
+        int year = 0, digits = 0;
+        for (; digits < length && digits < 9 && Character.isDigit(text[offset + digits]); ++digits) {
+            year = year * 10 + Character.digit(text[offset + digits], 10);
+        }
+        return digits == 0 ? ActorsNetwork.UNKNOWN_YEAR : year;
+    }
+
+    /**
+     * Hands a parsed batch to the builder once every earlier batch has been
+     * handed over, so actor ids come out the same as a sequential read.
+     * Whatever the builder throws fails the run; the batch still counts as
+     * handed over, so no other worker waits for it.
+     */
+    private static void commit(long seq, Run run,
+                               List<String> titles, List<Integer> years, List<String[]> casts)
+            throws InterruptedException {
+        synchronized (run.commitLock) {
+            while (run.nextCommit != seq && !run.failed()) {
+                run.commitLock.wait(100);
+            }
+            try {
+                if (!run.failed()) {
+                    for (int i = 0; i < titles.size(); ++i) {
+                        run.movies.add(titles.get(i), years.get(i), casts.get(i));
+                    }
+                }
+            } catch (RuntimeException | Error e) {
+                run.fail(e);
+            } finally {
+                ++run.nextCommit;
+                run.commitLock.notifyAll();
+            }
+        }
     }
 }
@@ -0,0 +1,275 @@
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Writes synthetic data sets in the format of the Oracle of Bacon dump, one
+ * Util.MovieInfo JSON object per line, compressed with bzip2, so ingest and
+ * search can be tested offline and beyond the size of the real data.
+ * <p>
+ * Cast sizes are log-normal. Every actor debuts with a career of k credits,
+ * where P(k or more) falls as a power of k, and keeps being cast until the
+ * career is used up, so most actors appear once and a few become hubs with
+ * thousands of co-stars. Movies are written in year order and only actors
+ * with credits left are kept in memory, so the output can be much larger
+ * than the heap. A few actors get the names NetworkTest looks up and long
+ * careers, which lets the tests run on a generated data set.
+ */
+final class DatasetGenerator {
+    /**
+     * Movies per unit of scale, roughly as many as the real dump has.
+     */
+    static final private int SCALE_MOVIES = 200_000;
+    static final private int FIRST_YEAR = 1900;
+    static final private int YEARS = 125;
+    static final private double CAST_MEDIAN = 10;
+    static final private double CAST_SIGMA = 0.8;
+    static final private int MAX_CAST = 300;
+    static final private double CAREER_EXPONENT = 1.1;
+    static final private int MAX_CREDITS = 1000;
+    static final private int NOTABLE_CREDITS = 250;
+    static final private String[] NOTABLE = {
+            "Kevin Bacon", "Tom Cruise", "Ben Affleck", "Matt Damon", "Rainn Wilson", "Terry Crews",
+            "Ermina Zaenah", "Samuel L. Jackson", "Harrison Ford", "Robert Downey, Jr.", "Tom Hanks",
+            "Morgan Freeman", "Scarlett Johansson", "Andy Serkis", "Anthony Daniels", "Eddie Murphy",
+            "Stanley Tucci", "Idris Elba", "Johnny Depp", "Ian McKellen", "Bradley Cooper"};
+    /**
+     * 32 syllables, so 5 of them make 2^25 distinct names.
+     */
+    static final private String[] SYLLABLES = {
+            "ba", "be", "da", "de", "di", "fa", "ga", "ha", "ja", "ka", "ki", "la", "le", "li", "lo", "ma",
+            "me", "mi", "na", "ne", "no", "pa", "ra", "re", "ri", "ro", "sa", "se", "ta", "to", "va", "za"};
+    static final private int NAME_BITS = 25;
+
+    private final long movies;
+    private final Random random;
+    /**
+     * Chance that a cast slot goes to a new actor, the inverse of the mean
+     * career, so that debuts and repeat credits stay in balance.
+     */
+    private final double debutRate;
+    private int[] active = new int[1 << 12];
+    private int[] remaining = new int[1 << 12];
+    private int activeCount = 0;
+    private int notables = 0;
+    private int regulars = 0;
+    private long credits = 0;
+
+    /**
+     * @param movies Movies to write
+     */
+    DatasetGenerator(long movies, long seed) {
+        if (movies < 0) {
+            throw new IllegalArgumentException("Negative movie count " + movies);
+        }
+        this.movies = movies;
+        random = new Random(seed);
+        double meanCareer = 0;
+        for (int k = 1; k <= MAX_CREDITS; ++k) {
+            meanCareer += Math.pow(k, -CAREER_EXPONENT);
+        }
+        debutRate = 1 / meanCareer;
+    }
+
+    /**
+     * @param scale Size relative to the real dump, e.g. 1, 10 or 100
+     */
+    static DatasetGenerator ofScale(double scale, long seed) {
+        return new DatasetGenerator(Math.round(scale * SCALE_MOVIES), seed);
+    }
+
+    int actors() {
+        return notables + regulars;
+    }
+
+    long credits() {
+        return credits;
+    }
+
+    /**
+     * Writes the data set to file, compressed, replacing it only once it is
+     * complete.
+     */
+    void write(Path file) throws IOException {
+        final Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        final Path tmp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream out = new BZip2CompressorOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+                write(out);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Writes the uncompressed JSON lines to out, leaving it open.
+     */
+    void write(OutputStream out) throws IOException {
+        final JsonGenerator json = new JsonFactory().createGenerator(out);
+        json.setRootValueSeparator(null);
+        json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        final int companies = (int) Math.max(1, Math.sqrt(movies));
+        final int[] cast = new int[MAX_CAST];
+        for (long m = 0; m < movies; ++m) {
+            final int size = castSize();
+            for (int i = 0; i < size; ++i) {
+                cast[i] = cast(m, cast, i);
+            }
+            credits += size;
+            json.writeStartObject();
+            json.writeStringField("title", title());
+            json.writeStringField("year", Integer.toString((int) (FIRST_YEAR + YEARS * m / movies)));
+            json.writeArrayFieldStart("cast");
+            for (int i = 0; i < size; ++i) {
+                json.writeString(actorName(cast[i]));
+            }
+            json.writeEndArray();
+            json.writeArrayFieldStart("directors");
+            json.writeString(actorName(cast[random.nextInt(size)]));
+            json.writeEndArray();
+            json.writeArrayFieldStart("producers");
+            json.writeString(actorName(cast[random.nextInt(size)]));
+            json.writeEndArray();
+            json.writeArrayFieldStart("companies");
+            json.writeString(word(random.nextInt(companies)) + " Pictures");
+            json.writeEndArray();
+            json.writeEndObject();
+            json.writeRaw('\n');
+        }
+        json.flush();
+    }
+
+    private int castSize() {
+        final double size = CAST_MEDIAN * Math.exp(CAST_SIGMA * random.nextGaussian());
+        return (int) Math.max(1, Math.min(MAX_CAST, Math.round(size)));
+    }
+
+    /**
+     * Picks an actor not among the first filled members of cast, either a
+     * new one or one with credits left.
+     */
+    private int cast(long movie, int[] cast, int filled) {
+        if (activeCount > 0 && random.nextDouble() >= debutRate) {
+            for (int tries = 0; tries < 4; ++tries) {
+                final int slot = random.nextInt(activeCount);
+                final int id = active[slot];
+                if (!contains(cast, filled, id)) {
+                    if (--remaining[slot] == 0) {
+                        --activeCount;
+                        active[slot] = active[activeCount];
+                        remaining[slot] = remaining[activeCount];
+                    }
+                    return id;
+                }
+            }
+        }
+        return debut(movie);
+    }
+
+    private static boolean contains(int[] cast, int filled, int id) {
+        for (int i = 0; i < filled; ++i) {
+            if (cast[i] == id) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Notable actors debut at even intervals over the whole run rather than
+     * together in the first movies.
+     */
+    private int debut(long movie) {
+        final int id, career;
+        if (notables < NOTABLE.length && movie >= notables * movies / NOTABLE.length) {
+            id = notables++;
+            career = NOTABLE_CREDITS;
+        } else {
+            id = NOTABLE.length + regulars++;
+            career = (int) Math.min(MAX_CREDITS, Math.pow(1 - random.nextDouble(), -1 / CAREER_EXPONENT));
+        }
+        if (career > 1) {
+            if (activeCount == active.length) {
+                active = Arrays.copyOf(active, activeCount * 2);
+                remaining = Arrays.copyOf(remaining, activeCount * 2);
+            }
+            active[activeCount] = id;
+            remaining[activeCount++] = career - 1;
+        }
+        return id;
+    }
+
+    private String title() {
+        final String first = word(random.nextInt());
+        return random.nextInt(4) == 0 ? "The " + first : first + " " + word(random.nextInt());
+    }
+
+    /**
+     * A capitalized word of two or three syllables taken from bits.
+     */
+    private static String word(int bits) {
+        final StringBuilder ret = new StringBuilder();
+        final int syllables = 2 + (bits >>> 31);
+        for (int i = 0; i < syllables; ++i) {
+            ret.append(SYLLABLES[(bits >>> (5 * i)) & 31]);
+        }
+        ret.setCharAt(0, Character.toUpperCase(ret.charAt(0)));
+        return ret.toString();
+    }
+
+    /**
+     * Distinct for every id; ids are scattered over the name space, so
+     * consecutive actors do not share prefixes.
+     */
+    static String actorName(int id) {
+        if (id < NOTABLE.length) {
+            return NOTABLE[id];
+        }
+        final int i = id - NOTABLE.length;
+        final int x = (int) ((i * 0x9E3779B1L) & ((1 << NAME_BITS) - 1));
+        final StringBuilder ret = new StringBuilder()
+                .append(SYLLABLES[x & 31]).append(SYLLABLES[(x >>> 5) & 31]).append(' ')
+                .append(SYLLABLES[(x >>> 10) & 31]).append(SYLLABLES[(x >>> 15) & 31])
+                .append(SYLLABLES[(x >>> 20) & 31]);
+        ret.setCharAt(0, Character.toUpperCase(ret.charAt(0)));
+        ret.setCharAt(5, Character.toUpperCase(ret.charAt(5)));
+        final int clash = i >>> NAME_BITS;
+        if (clash > 0) {
+            ret.append(" (").append(clash + 1).append(')');
+        }
+        return ret.toString();
+    }
+
+    /**
+     * Writes a data set: output file, then the scale relative to the real
+     * dump (1 by default) and the random seed.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: DatasetGenerator output.txt.bz2 [scale] [seed]");
+            System.exit(1);
+        }
+        final double scale = args.length > 1 ? Double.parseDouble(args[1]) : 1;
+        final long seed = args.length > 2 ? Long.parseLong(args[2]) : 1;
+        final DatasetGenerator generator = ofScale(scale, seed);
+        final long start = System.nanoTime();
+        generator.write(Paths.get(args[0]));
+        System.out.println("Wrote " + generator.movies + " movies, " + generator.actors() + " actors and "
+                + generator.credits() + " credits to " + args[0] + " in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+}
@@ -0,0 +1,149 @@
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.IntStream;
+
+/**
+ * Immutable summary of a degree sequence. Degrees, their sum and their sum
+ * of squares come from one parallel pass; a counting sort then orders the
+ * actors by degree, keeping every actor of a shared degree, so z-scores are
+ * O(1), the top k is O(k) and a degree range is one slice of byDegree.
+ */
+final class DegreeStats {
+    private static final int GRAIN = 1 << 14;
+    private final int[] degrees;
+    /**
+     * Actor ids by ascending degree, ties by ascending id.
+     */
+    private final int[] byDegree;
+    /**
+     * Actors of degree d are byDegree[start[d]] .. byDegree[start[d + 1] - 1].
+     */
+    private final int[] start;
+    private final double mean;
+    private final double stDev;
+
+    DegreeStats(int size, IntUnaryOperator degree) {
+        degrees = new int[size];
+        final double[] moments = IntStream.range(0, (size + GRAIN - 1) / GRAIN).parallel()
+                .mapToObj(c -> {
+                    final double[] local = new double[3];
+                    for (int u = c * GRAIN, end = Math.min(size, u + GRAIN); u < end; ++u) {
+                        final int d = degree.applyAsInt(u);
+                        degrees[u] = d;
+                        local[0] += d;
+                        local[1] += (double) d * d;
+                        local[2] = Math.max(local[2], d);
+                    }
+                    return local;
+                })
+                .reduce(new double[3], (a, b) -> new double[]{a[0] + b[0], a[1] + b[1], Math.max(a[2], b[2])});
+        final int max = (int) moments[2];
+        mean = size == 0 ? 0 : moments[0] / size;
+        stDev = size == 0 ? 0 : Math.sqrt(Math.max(0, moments[1] / size - mean * mean));
+        start = new int[max + 2];
+        for (int d : degrees) {
+            ++start[d + 1];
+        }
+        for (int d = 0; d <= max; ++d) {
+            start[d + 1] += start[d];
+        }
+        byDegree = new int[size];
+        final int[] cursor = start.clone();
+        for (int u = 0; u < size; ++u) {
+            byDegree[cursor[degrees[u]]++] = u;
+        }
+    }
+
+    int size() {
+        return degrees.length;
+    }
+
+    double mean() {
+        return mean;
+    }
+
+    double stDev() {
+        return stDev;
+    }
+
+    int maxDegree() {
+        return start.length - 2;
+    }
+
+    int degree(int u) {
+        return degrees[u];
+    }
+
+    /**
+     * @return How many standard deviations u's degree is from the mean
+     */
+    double zScore(int u) {
+        return (degrees[u] - mean) / stDev;
+    }
+
+    /**
+     * @param p Between 0 and 100
+     * @return The smallest degree that at least p percent of actors do not exceed
+     */
+    int percentile(double p) {
+        if (degrees.length == 0) {
+            return 0;
+        }
+        final int rank = (int) Math.ceil(p / 100 * degrees.length) - 1;
+        return degrees[byDegree[Math.max(0, Math.min(degrees.length - 1, rank))]];
+    }
+
+    /**
+     * @return The number of actors of each degree in [min, max]
+     */
+    int count(int min, int max) {
+        min = Math.max(0, min);
+        max = Math.min(maxDegree(), max);
+        return min > max ? 0 : start[max + 1] - start[min];
+    }
+
+    /**
+     * @return Actors with degree in [min, max], by ascending degree
+     */
+    int[] range(int min, int max) {
+        min = Math.max(0, min);
+        max = Math.min(maxDegree(), max);
+        if (min > max) {
+            return new int[0];
+        }
+        final int[] ret = new int[start[max + 1] - start[min]];
+        System.arraycopy(byDegree, start[min], ret, 0, ret.length);
+        return ret;
+    }
+
+    /**
+     * @return The k actors of highest degree, highest first
+     */
+    int[] top(int k) {
+        k = Math.min(k, byDegree.length);
+        final int[] ret = new int[k];
+        for (int i = 0; i < k; ++i) {
+            ret[i] = byDegree[byDegree.length - 1 - i];
+        }
+        return ret;
+    }
+
+    /**
+     * Using the given interval, finds the number of actors with degrees in
+     * certain ranges. An interval of 10 will have buckets 0-9, 10-19, etc.
+     * The lower end of the interval is used as the map key, and every bucket
+     * up to the highest degree is present even when it is empty.
+     * @throws IllegalArgumentException If interval is not positive
+     */
+    SortedMap<Integer, Integer> histogram(int interval) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Bucket interval " + interval + " is not positive");
+        }
+        final SortedMap<Integer, Integer> buckets = new TreeMap<>();
+        for (int bucket = 0; bucket <= maxDegree(); bucket += interval) {
+            buckets.put(bucket, count(bucket, bucket + interval - 1));
+        }
+        return buckets;
+    }
+}
@@ -0,0 +1,154 @@
+import java.util.Arrays;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Exact diameter by iFUB (Crescenzi et al., "On computing the diameter of
+ * real-world undirected graphs"). A few sweeps give a lower bound; then the
+ * nodes are grouped into fringes by distance from a high-degree center and
+ * the eccentricities of the farthest fringes are computed until the lower
+ * bound meets the upper bound 2(i - 1) that applies to every pair of nodes
+ * inside fringe i - 1. On small-world graphs this stops after a handful of
+ * BFS runs, and each fringe is evaluated with batched multi-source BFS. The
+ * result covers the component that contains the center.
+ */
+final class DiameterSearch {
+    interface Listener {
+        /**
+         * Called as BFS runs complete with the current bounds on the diameter.
+         */
+        void update(int bfsRuns, int lower, int upper);
+    }
+
+    private final int size;
+    private final IntFunction<int[]> distances;
+    private final Function<int[], int[]> eccentricities;
+    private final IntUnaryOperator degree;
+    private final Listener listener;
+    private int runs = 0;
+    private int lower = 0, upper = Integer.MAX_VALUE;
+    private int from = 0, to = 0;
+
+    /**
+     * @param distances Distances from a node to every node, -1 if unreachable
+     * @param eccentricities Eccentricities of a batch of nodes
+     */
+    DiameterSearch(int size, IntFunction<int[]> distances, Function<int[], int[]> eccentricities,
+                   IntUnaryOperator degree, Listener listener) {
+        this.size = size;
+        this.distances = distances;
+        this.eccentricities = eccentricities;
+        this.degree = degree;
+        this.listener = listener;
+    }
+
+    int diameter() {
+        return lower;
+    }
+
+    int from() {
+        return from;
+    }
+
+    int to() {
+        return to;
+    }
+
+    int bfsRuns() {
+        return runs;
+    }
+
+    DiameterSearch run() {
+        if (size == 0) {
+            return this;
+        }
+        int center = 0;
+        for (int u = 1; u < size; ++u) {
+            if (degree.applyAsInt(u) > degree.applyAsInt(center)) {
+                center = u;
+            }
+        }
+        final int[] fromCenter = bfs(center);
+        final int eccentricity = offer(center, fromCenter);
+        final int a = farthest(fromCenter);
+        final int[] fromA = bfs(a);
+        offer(a, fromA);
+        offer(farthest(fromA), bfs(farthest(fromA)));
+
+        final int[] fringeStart = new int[eccentricity + 2];
+        for (int u = 0; u < size; ++u) {
+            if (fromCenter[u] >= 0) {
+                ++fringeStart[fromCenter[u] + 1];
+            }
+        }
+        for (int i = 0; i <= eccentricity; ++i) {
+            fringeStart[i + 1] += fringeStart[i];
+        }
+        final int[] fringes = new int[fringeStart[eccentricity + 1]];
+        final int[] cursor = fringeStart.clone();
+        for (int u = 0; u < size; ++u) {
+            if (fromCenter[u] >= 0) {
+                fringes[cursor[fromCenter[u]]++] = u;
+            }
+        }
+
+        setUpper(2 * eccentricity);
+        for (int i = eccentricity; upper > lower && i > 0; --i) {
+            final int[] fringe = Arrays.copyOfRange(fringes, fringeStart[i], fringeStart[i + 1]);
+            final int[] found = eccentricities.apply(fringe);
+            runs += fringe.length;
+            for (int f = 0; f < fringe.length; ++f) {
+                record(fringe[f], -1, found[f]);
+            }
+            if (lower > 2 * (i - 1)) {
+                break;
+            }
+            setUpper(2 * (i - 1));
+        }
+        if (to == -1) {
+            to = farthest(bfs(from));
+        }
+        setUpper(lower);
+        return this;
+    }
+
+    private int[] bfs(int u) {
+        final int[] d = distances.apply(u);
+        ++runs;
+        return d;
+    }
+
+    private static int farthest(int[] d) {
+        int best = 0;
+        for (int u = 1; u < d.length; ++u) {
+            if (d[u] > d[best]) {
+                best = u;
+            }
+        }
+        return best;
+    }
+
+    private int offer(int u, int[] d) {
+        final int v = farthest(d);
+        record(u, v, d[v]);
+        return d[v];
+    }
+
+    /**
+     * @param v The node farthest from u, or -1 if it is not known yet
+     */
+    private void record(int u, int v, int eccentricity) {
+        if (eccentricity > lower) {
+            lower = eccentricity;
+            from = u;
+            to = v;
+        }
+        listener.update(runs, lower, upper);
+    }
+
+    private void setUpper(int bound) {
+        upper = Math.max(lower, bound);
+        listener.update(runs, lower, upper);
+    }
+}
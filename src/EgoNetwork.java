@@ -0,0 +1,281 @@
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * A sample of the network around one actor, small enough to draw: the actor,
+ * the co-stars ranked highest within a few hops, and the links among them,
+ * each capped by a budget. Every actor expanded keeps its top k co-stars in a
+ * bounded heap of packed longs, so a star with a hundred thousand co-stars
+ * costs one pass over them and no sort. In bipartite mode that pass runs
+ * over the casts of the actor's movies, counting shared movies with
+ * CoStars.
+ * <p>
+ * Links are found by intersecting sorted lists. In bipartite mode two actors
+ * are linked by the movies they share, which is the intersection of their
+ * sorted movie lists. Otherwise each sampled actor's adjacency is
+ * intersected with the sorted set of actors sampled, by binary search into
+ * that set, which is much the smaller of the two.
+ */
+final class EgoNetwork {
+    enum Rank {
+        /**
+         * Best connected co-stars first. In bipartite mode this needs the
+         * co-star counts of all actors, counted once on first use.
+         */
+        DEGREE,
+        /**
+         * Co-stars of the most shared movies first.
+         */
+        WEIGHT
+    }
+
+    /**
+     * The center first, then the actors picked, hop by hop.
+     */
+    final int[] nodes;
+    /**
+     * Link i joins from[i] and to[i], who share weight[i] movies. Links of
+     * actors picked earlier come first, those of the center leading.
+     */
+    final int[] from;
+    final int[] to;
+    final int[] weight;
+
+    private EgoNetwork(int[] nodes, int[] from, int[] to, int[] weight) {
+        this.nodes = nodes;
+        this.from = from;
+        this.to = to;
+        this.weight = weight;
+    }
+
+    int links() {
+        return from.length;
+    }
+
+    /**
+     * @param actors Nodes below actors are actors, any others are movies
+     * @param degree Co-star count of an actor
+     * @param hops How far from center to go
+     * @param k Most co-stars picked per actor expanded
+     * @param maxNodes Most actors picked, center included
+     * @param maxLinks Most links returned
+     * @param context Actors already known, such as those on screen, which
+     * are linked to the actors picked but not picked themselves; links
+     * among them are left out
+     * @param token Checked before every actor expanded
+     */
+    static EgoNetwork sample(CsrGraph links, int actors, IntUnaryOperator degree, int center, int hops, int k,
+                             int maxNodes, int maxLinks, Rank rank, int[] context, CancellationToken token) {
+        final BitSet picked = new BitSet(actors);
+        int[] nodes = new int[Math.max(1, Math.min(maxNodes, 1 << 10))];
+        nodes[0] = center;
+        picked.set(center);
+        int count = 1;
+        final TopK top = new TopK(k);
+        final boolean bipartite = links.size() > actors;
+        final CoStars coStars = bipartite ? new CoStars(actors) : null;
+        for (int hop = 0, levelStart = 0; hop < hops && count < maxNodes; ++hop) {
+            final int levelEnd = count;
+            for (int i = levelStart; i < levelEnd && count < maxNodes; ++i) {
+                token.check();
+                top.clear();
+                final int u = nodes[i];
+                if (bipartite) {
+                    coStars.count(links, u);
+                    for (int j = 0; j < coStars.size; ++j) {
+                        final int v = coStars.found[j];
+                        if (!picked.get(v)) {
+                            top.offer(rank == Rank.WEIGHT ? coStars.shared[v] : degree.applyAsInt(v), v);
+                        }
+                    }
+                } else {
+                    for (int j = links.begin(u), end = links.end(u); j < end; ++j) {
+                        final int v = links.target(j);
+                        if (!picked.get(v)) {
+                            top.offer(rank == Rank.WEIGHT ? links.weight(j) : degree.applyAsInt(v), v);
+                        }
+                    }
+                }
+                for (int j = top.drain(); j > 0 && count < maxNodes; --j) {
+                    final int v = top.next();
+                    if (count == nodes.length) {
+                        nodes = Arrays.copyOf(nodes, Math.min(maxNodes, nodes.length * 2));
+                    }
+                    nodes[count++] = v;
+                    picked.set(v);
+                }
+            }
+            levelStart = levelEnd;
+        }
+        nodes = Arrays.copyOf(nodes, count);
+        // Sampled and context actors together, sorted, each with the index
+        // at which it was picked, or MAX_VALUE if it was not
+        final long[] known = new long[count + context.length];
+        for (int i = 0; i < count; ++i) {
+            known[i] = (long) nodes[i] << 32 | i;
+        }
+        int size = count;
+        for (int u : context) {
+            if (!picked.get(u)) {
+                known[size++] = (long) u << 32 | Integer.MAX_VALUE;
+            }
+        }
+        Arrays.sort(known, 0, size);
+        int distinct = 0;
+        for (int i = 0; i < size; ++i) {
+            if (distinct == 0 || known[distinct - 1] >>> 32 != known[i] >>> 32) {
+                known[distinct++] = known[i];
+            }
+        }
+        final int[] ids = new int[distinct];
+        final int[] pickedAt = new int[distinct];
+        for (int i = 0; i < distinct; ++i) {
+            ids[i] = (int) (known[i] >>> 32);
+            pickedAt[i] = (int) known[i];
+        }
+        final LinkList found = new LinkList(maxLinks);
+        if (bipartite) {
+            final int[][] movies = new int[distinct][];
+            for (int i = 0; i < distinct; ++i) {
+                movies[i] = sortedTargets(links, ids[i]);
+            }
+            final int[] at = new int[count];
+            for (int i = 0; i < distinct; ++i) {
+                if (pickedAt[i] != Integer.MAX_VALUE) {
+                    at[pickedAt[i]] = i;
+                }
+            }
+            for (int a = 0; a < count && !found.full(); ++a) {
+                final int[] mine = movies[at[a]];
+                for (int b = 0; b < distinct && !found.full(); ++b) {
+                    if (pickedAt[b] > a) {
+                        final int shared = intersection(mine, movies[b]);
+                        if (shared > 0) {
+                            found.add(nodes[a], ids[b], shared);
+                        }
+                    }
+                }
+            }
+        } else {
+            for (int a = 0; a < count && !found.full(); ++a) {
+                final int u = nodes[a];
+                for (int i = links.begin(u), end = links.end(u); i < end && !found.full(); ++i) {
+                    final int b = Arrays.binarySearch(ids, links.target(i));
+                    if (b >= 0 && pickedAt[b] > a) {
+                        found.add(u, ids[b], links.weight(i));
+                    }
+                }
+            }
+        }
+        return new EgoNetwork(nodes, Arrays.copyOf(found.from, found.size), Arrays.copyOf(found.to, found.size),
+                Arrays.copyOf(found.weight, found.size));
+    }
+
+    private static int[] sortedTargets(CsrGraph links, int u) {
+        final int[] ret = links.neighbors(u);
+        Arrays.sort(ret);
+        return ret;
+    }
+
+    /**
+     * @return How many entries two sorted arrays share
+     */
+    private static int intersection(int[] a, int[] b) {
+        int shared = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length; ) {
+            if (a[i] < b[j]) {
+                ++i;
+            } else if (a[i] > b[j]) {
+                ++j;
+            } else {
+                ++shared;
+                ++i;
+                ++j;
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * The k highest scores seen, as a min-heap of score and id packed into
+     * longs, the lower id winning ties.
+     */
+    static final class TopK {
+        private final long[] heap;
+        private int size = 0;
+
+        TopK(int k) {
+            heap = new long[Math.max(0, k)];
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        void offer(int score, int id) {
+            final long key = (long) score << 32 | (Integer.MAX_VALUE - id);
+            if (size < heap.length) {
+                int i = size++;
+                for (int parent; i > 0 && heap[parent = (i - 1) >>> 1] > key; i = parent) {
+                    heap[i] = heap[parent];
+                }
+                heap[i] = key;
+            } else if (size > 0 && key > heap[0]) {
+                siftDown(key);
+            }
+        }
+
+        private void siftDown(long key) {
+            int i = 0;
+            for (int child; (child = 2 * i + 1) < size; i = child) {
+                if (child + 1 < size && heap[child + 1] < heap[child]) {
+                    ++child;
+                }
+                if (heap[child] >= key) {
+                    break;
+                }
+                heap[i] = heap[child];
+            }
+            heap[i] = key;
+        }
+
+        /**
+         * Sorts the entries best first for next to hand out.
+         * @return The number of entries
+         */
+        int drain() {
+            Arrays.sort(heap, 0, size);
+            return size;
+        }
+
+        int next() {
+            return Integer.MAX_VALUE - (int) heap[--size];
+        }
+    }
+
+    private static final class LinkList {
+        private final int budget;
+        int[] from = new int[16], to = new int[16], weight = new int[16];
+        int size = 0;
+
+        LinkList(int budget) {
+            this.budget = budget;
+        }
+
+        boolean full() {
+            return size >= budget;
+        }
+
+        void add(int u, int v, int w) {
+            if (size == from.length) {
+                from = Arrays.copyOf(from, size * 2);
+                to = Arrays.copyOf(to, size * 2);
+                weight = Arrays.copyOf(weight, size * 2);
+            }
+            from[size] = u;
+            to[size] = v;
+            weight[size++] = w;
+        }
+    }
+}
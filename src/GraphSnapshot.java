@@ -0,0 +1,284 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+
+/**
+ * Binary snapshot of an ActorsNetwork. All values are little-endian and
+ * every section starts on an 8-byte boundary:
+ * <pre>
+ * header     magic, version, flags, actors, movies, edges, source tag
+ * names      actors + 1 byte offsets, then the UTF-8 bytes of every name,
+ *            sorted by those bytes
+ * byName     actors ids in that order
+ * ranks      actors positions of each id in that order
+ * titles     movies + 1 byte offsets and UTF-8 bytes (bipartite only), the
+ *            end offset of a missing title stored complemented
+ * degrees    actors co-star counts (bipartite only)
+ * components actors component ids
+ * offsets    actors + movies + 1 CSR offsets
+ * targets    edges CSR targets
+ * weights    edges CSR weights (weighted only)
+ * years      edges CSR edge years (dated only)
+ * </pre>
+ * Names, degrees, components and adjacency are mapped rather than read, so
+ * loading costs little more than decoding the movie titles and counting
+ * component sizes.
+ */
+final class GraphSnapshot {
+    private static final int MAGIC = 0x4E544341;
+    private static final int VERSION = 6;
+    private static final int BIPARTITE = 1;
+    private static final int WEIGHTED = 2;
+    private static final int DATED = 4;
+
+    private GraphSnapshot() {
+    }
+
+    /**
+     * @throws IllegalArgumentException If g is a co-star graph viewed asOf
+     * some year, whose weights and years would be stored as those of a whole
+     * network
+     */
+    static void save(ActorsNetwork g, Path file, String sourceTag) throws IOException {
+        if (!g.isBipartite() && g.graph().isView()) {
+            throw new IllegalArgumentException("Cannot save a view of a network");
+        }
+        final Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        final CsrGraph links = g.graph().compact();
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            final Writer out = new Writer(channel);
+            out.putInt(MAGIC);
+            out.putInt(VERSION);
+            out.putInt((g.isBipartite() ? BIPARTITE : 0) | (links.weights() != null ? WEIGHTED : 0)
+                    | (links.years() != null ? DATED : 0));
+            out.putInt(g.getSize());
+            out.putInt(g.getMovieCount());
+            out.putInt((int) links.edgeCount());
+            out.putString(sourceTag == null ? "" : sourceTag);
+            out.align();
+            final NameDictionary names = g.names();
+            out.putInts(names.offsets());
+            out.putBytes(names.arena());
+            out.align();
+            out.putInts(names.ids());
+            out.putInts(names.ranks());
+            if (g.isBipartite()) {
+                final String[] titles = new String[g.getMovieCount()];
+                for (int i = 0; i < titles.length; ++i) {
+                    titles[i] = g.getMovieTitle(i);
+                }
+                out.putStrings(titles);
+                out.putInts(g.coStarDegrees());
+            }
+            out.putInts(g.components().ids());
+            out.putInts(links.offsets());
+            out.putInts(links.targets());
+            if (links.weights() != null) {
+                out.putInts(links.weights());
+            }
+            if (links.years() != null) {
+                out.putInts(links.years());
+            }
+            out.flush();
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @param sourceTag Identifies the data the snapshot must have been built
+     * from, or null to accept any snapshot
+     * @return The stored network, or null if the file is missing, has an
+     * unknown format, or was built from different data
+     */
+    static ActorsNetwork load(Path file, String sourceTag) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final ByteBuffer header = read(channel, 0, 28);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                return null;
+            }
+            final int flags = header.getInt();
+            final int actors = header.getInt();
+            final int movies = header.getInt();
+            final int edges = header.getInt();
+            final int tagLength = header.getInt();
+            final String tag = StandardCharsets.UTF_8.decode(read(channel, 28, tagLength)).toString();
+            if (sourceTag != null && !sourceTag.equals(tag)) {
+                return null;
+            }
+            long position = align(28 + tagLength);
+            final IntArray nameOffsets = IntArray.map(channel, position, actors + 1);
+            position = align(position + 4L * (actors + 1));
+            final int nameBytes = nameOffsets.get(actors);
+            final ByteBuffer arena = channel.map(FileChannel.MapMode.READ_ONLY, position, nameBytes);
+            position = align(position + nameBytes);
+            final IntArray byName = IntArray.map(channel, position, actors);
+            position = align(position + 4L * actors);
+            final IntArray ranks = IntArray.map(channel, position, actors);
+            position = align(position + 4L * actors);
+            final NameDictionary names = new NameDictionary(arena, nameOffsets, byName, ranks);
+            String[] titles = null;
+            IntArray degrees = null;
+            if ((flags & BIPARTITE) != 0) {
+                titles = new String[movies];
+                position = readStrings(channel, position, titles);
+                degrees = IntArray.map(channel, position, actors);
+                position = align(position + 4L * actors);
+            }
+            final IntArray components = IntArray.map(channel, position, actors);
+            position = align(position + 4L * actors);
+            final int nodes = actors + movies;
+            final IntArray offsets = IntArray.map(channel, position, nodes + 1);
+            position = align(position + 4L * (nodes + 1));
+            final IntArray targets = IntArray.map(channel, position, edges);
+            position = align(position + 4L * edges);
+            IntArray weights = null;
+            if ((flags & WEIGHTED) != 0) {
+                weights = IntArray.map(channel, position, edges);
+                position = align(position + 4L * edges);
+            }
+            final IntArray years = (flags & DATED) != 0 ? IntArray.map(channel, position, edges) : null;
+            return new ActorsNetwork(names, new CsrGraph(offsets, targets, weights, years), titles, degrees,
+                    components);
+        }
+    }
+
+    private static long align(long position) {
+        return (position + 7) & ~7L;
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Truncated snapshot");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static long readStrings(FileChannel channel, long position, String[] into) throws IOException {
+        final IntArray offsets = IntArray.map(channel, position, into.length + 1);
+        final int bytes = offset(offsets.get(into.length));
+        position = align(position + 4L * (into.length + 1));
+        final ByteBuffer arena = channel.map(FileChannel.MapMode.READ_ONLY, position, bytes);
+        final byte[] scratch = new byte[256];
+        for (int i = 0; i < into.length; ++i) {
+            final int end = offsets.get(i + 1);
+            if (end < 0) {
+                into[i] = null;
+                continue;
+            }
+            final int from = offset(offsets.get(i));
+            final int length = end - from;
+            final byte[] buf = length <= scratch.length ? scratch : new byte[length];
+            arena.position(from);
+            arena.get(buf, 0, length);
+            into[i] = new String(buf, 0, length, StandardCharsets.UTF_8);
+        }
+        return align(position + bytes);
+    }
+
+    /**
+     * @return A string offset, whether or not it was stored complemented
+     */
+    private static int offset(int stored) {
+        return stored < 0 ? ~stored : stored;
+    }
+
+    private static final class Writer {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+        private long written = 0;
+
+        Writer(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                written += channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        void putInt(int v) throws IOException {
+            ensure(4);
+            buffer.putInt(v);
+        }
+
+        void putBytes(byte[] bytes) throws IOException {
+            int from = 0;
+            while (from < bytes.length) {
+                ensure(1);
+                final int n = Math.min(buffer.remaining(), bytes.length - from);
+                buffer.put(bytes, from, n);
+                from += n;
+            }
+        }
+
+        void putBytes(ByteBuffer bytes) throws IOException {
+            while (bytes.hasRemaining()) {
+                ensure(1);
+                final ByteBuffer slice = bytes.duplicate();
+                slice.limit(slice.position() + Math.min(buffer.remaining(), slice.remaining()));
+                buffer.put(slice);
+                bytes.position(slice.position());
+            }
+        }
+
+        void putString(String s) throws IOException {
+            final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            putInt(bytes.length);
+            putBytes(bytes);
+        }
+
+        void putInts(IntArray a) throws IOException {
+            for (int i = 0; i < a.length(); ++i) {
+                putInt(a.get(i));
+            }
+            align();
+        }
+
+        void putStrings(String[] strings) throws IOException {
+            final byte[][] encoded = new byte[strings.length][];
+            long offset = 0;
+            putInt(0);
+            for (int i = 0; i < strings.length; ++i) {
+                encoded[i] = strings[i] == null ? new byte[0] : strings[i].getBytes(StandardCharsets.UTF_8);
+                offset += encoded[i].length;
+                if (offset > Integer.MAX_VALUE) {
+                    throw new IOException("Names do not fit in a snapshot");
+                }
+                putInt(strings[i] == null ? ~(int) offset : (int) offset);
+            }
+            align();
+            for (byte[] bytes : encoded) {
+                putBytes(bytes);
+            }
+            align();
+        }
+
+        void align() throws IOException {
+            final long position = written + buffer.position();
+            for (long i = position; i < GraphSnapshot.align(position); ++i) {
+                ensure(1);
+                buffer.put((byte) 0);
+            }
+        }
+    }
+}
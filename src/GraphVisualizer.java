@@ -10,99 +10,193 @@ import org.graphstream.ui.view.Camera;
 import org.graphstream.ui.view.Viewer;
 
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import java.awt.*;
 import java.awt.datatransfer.Clipboard;
 import java.awt.datatransfer.StringSelection;
 import java.awt.event.*;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 final class GraphVisualizer implements Runnable {
     private final static int NAME_THRESHOLD = 20;
     private final static int VISUALIZE_TIME_MS = 100;
+    /**
+     * Longest an expansion is animated for, and the most mutations that are
+     * animated at all; larger expansions appear at once.
+     */
+    private final static int ANIMATION_BUDGET_MS = 2000;
+    private final static int INSTANT_MUTATIONS = 500;
+    private final static int SUGGESTIONS = 8;
+    /**
+     * Co-stars shown per expansion, and the most links drawn for one.
+     */
+    private final static int NEIGHBORS = 15;
+    private final static int LINK_BUDGET = 500;
+    /**
+     * Colours in ui.css, community0 to community11, reused in turn.
+     */
+    private final static int COMMUNITY_COLOURS = 12;
+    private final static Path SNAPSHOT = Paths.get(System.getProperty("actors.snapshot", "actors.snapshot"));
     private final JFrame frame = new JFrame("Actor Network Visualizer");
     private final JLabel status = new JLabel();
-    private ActorsNetwork g;
+    private volatile ActorsNetwork g;
     private Graph network;
+    private RenderPipeline pipeline;
+    private volatile boolean animate = true;
+    private volatile boolean byCommunity = false;
+    private volatile Communities communities;
     private final List<Component> comps = new LinkedList<>();
+    private final TaskScheduler scheduler = new TaskScheduler(status::setText);
 
     private void init() {
         DataProcessing process = new DataProcessing();
-        try {
-            status.setText("Downloading data...");
-            process.acquireData();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-        List<String[]> casts = process.getAllCasts();
-        g = new ActorsNetwork(
-                casts.stream().flatMap(Arrays::stream).collect(Collectors.toSet()));
-        status.setText("Processing data...");
-        for (String[] clique : casts) {
-            final int l = clique.length;
-            for (int i = 0; i < l; ++i) {
-                for (int j = i + 1; j < l; ++j) {
-                    g.addEdge(clique[i], clique[j]);
-                }
+        scheduler.submit("Loading", task -> {
+            task.progress("Loading data...");
+            try {
+                return process.loadNetwork(SNAPSHOT);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
             }
-        }
-        status.setText("Data loaded!");
+        }, (loaded, task) -> {
+            g = loaded;
+            task.progress("Data loaded!");
+            SwingUtilities.invokeLater(this::enableAll);
+        });
     }
 
-    private final Set<Integer> nodesInGraph = new HashSet<>();
+    /**
+     * Only changed on the scheduler's effect thread, like network; queries
+     * read a snapshot of it.
+     */
+    private final Set<Integer> nodesInGraph = ConcurrentHashMap.newKeySet();
 
-    private Edge addEdge(String s, String e) {
-        if (s.compareTo(e) > 0) {
-            final String tmp = s;
-            s = e;
-            e = tmp;
+    private void addEdge(String s, String e) {
+        addEdge(s, e, edge -> {
+        });
+    }
+
+    /**
+     * Stages an edge between two actors, which style is applied to once it
+     * is in the graph.
+     */
+    private void addEdge(String s, String e, Consumer<Edge> style) {
+        final String first = s.compareTo(e) > 0 ? e : s;
+        final String second = s.compareTo(e) > 0 ? s : e;
+        pipeline.stage(network -> {
+            final Node node1 = network.addNode(first);
+            node1.setAttribute("ui.label",
+                    first.length() <= NAME_THRESHOLD ? first : first.substring(0, NAME_THRESHOLD));
+            Node node2 = network.addNode(second);
+            node2.setAttribute("ui.label",
+                    second.length() <= NAME_THRESHOLD ? second : second.substring(0, NAME_THRESHOLD));
+            classify(node1);
+            classify(node2);
+            final String id = first + " - " + second;
+            final Edge edge = network.addEdge(id, node1, node2);
+            style.accept(edge != null ? edge : network.getEdge(id));
+        });
+    }
+
+    private static boolean isCommunityClass(Object uiClass) {
+        return uiClass instanceof String && ((String) uiClass).startsWith("community");
+    }
+
+    /**
+     * Colours an actor by community when that is turned on, unless it is
+     * highlighted or on a link.
+     */
+    private void classify(Node node) {
+        final Object uiClass = node.getAttribute("ui.class");
+        if (uiClass != null && !isCommunityClass(uiClass)) {
+            return;
         }
-        final Node node1 = network.addNode(s);
-        node1.setAttribute("ui.label",
-                s.length() <= NAME_THRESHOLD ? s : s.substring(0, NAME_THRESHOLD));
-        Node node2 = network.addNode(e);
-        node2.setAttribute("ui.label",
-                e.length() <= NAME_THRESHOLD ? e : e.substring(0, NAME_THRESHOLD));
-        Edge edge = network.addEdge(s + " - " + e, node1, node2);
-        if (edge != null) {
-            try {
-                Thread.sleep(VISUALIZE_TIME_MS);
-            } catch (InterruptedException ignored) {
-            }
+        final Communities found = communities;
+        if (byCommunity && found != null) {
+            node.setAttribute("ui.class",
+                    "community" + found.community(g.getID(node.getId())) % COMMUNITY_COLOURS);
+        } else if (uiClass != null) {
+            node.removeAttribute("ui.class");
         }
-        return edge;
     }
 
-    private void displayNeighbors(String name) {
-        final Node node = network.addNode(name);
-        if (Objects.equals(node.getAttribute("ui.class"), "highlight")) {
+    /**
+     * Colours the displayed actors by community, finding the communities
+     * first if need be, or takes the colours off.
+     */
+    private void colourByCommunity(boolean on) {
+        byCommunity = on;
+        if (!on || communities != null) {
+            scheduler.apply(() -> network.forEach(this::classify));
             return;
         }
-        node.setAttribute("ui.class", "highlight");
-        node.setAttribute("ui.label", name);
-        node.setAttribute("layout.weight", 1. / 3);
+        scheduler.submit("Communities", task -> {
+            task.progress("Finding communities...");
+            return g.communities(task.token);
+        }, (found, task) -> {
+            communities = found;
+            task.progress(String.format("%d communities, modularity %.3f", found.count(), found.modularity()));
+            network.forEach(this::classify);
+        });
+    }
 
+    /**
+     * Applies the staged mutations, animated over up to VISUALIZE_TIME_MS
+     * per mutation unless animation is off or there are too many of them.
+     */
+    private void render(TaskScheduler.Task task) {
+        final int mutations = pipeline.pending();
+        pipeline.flush(animate && mutations <= INSTANT_MUTATIONS
+                ? Math.min(ANIMATION_BUDGET_MS, (long) mutations * VISUALIZE_TIME_MS) : 0, task.token);
+    }
+
+    private void displayNeighbors(String name) {
         final int id = g.getID(name);
-        List<Integer> collect = g.getNeighbors(id)
-                .stream()
-                .sorted(Comparator.comparingInt(o -> g.getDegree(o)))
-                .limit(15).collect(Collectors.toList());
-        collect.forEach(e -> addEdge(name, g.getName(e)));
-        collect.add(id);
-        collect.forEach(e -> g.getNeighbors(e)
-                .stream()
-                .filter(nodesInGraph::contains)
-                .forEach(i -> addEdge(g.getName(e), g.getName(i))));
-        nodesInGraph.addAll(collect);
+        scheduler.submit("Neighbors of " + name, task -> {
+            final int[] shown = nodesInGraph.stream().mapToInt(Integer::intValue).toArray();
+            return g.egoNetwork(id, 1, NEIGHBORS, NEIGHBORS + 1, LINK_BUDGET, EgoNetwork.Rank.WEIGHT,
+                    shown, task.token);
+        }, (ego, task) -> {
+            final Node node = network.addNode(name);
+            if (Objects.equals(node.getAttribute("ui.class"), "highlight")) {
+                return;
+            }
+            node.setAttribute("ui.class", "highlight");
+            node.setAttribute("ui.label", name);
+            node.setAttribute("layout.weight", 1. / 3);
+
+            for (int i = 0; i < ego.links(); ++i) {
+                addEdge(g.getName(ego.from[i]), g.getName(ego.to[i]));
+            }
+            for (int u : ego.nodes) {
+                nodesInGraph.add(u);
+            }
+            render(task);
+        });
     }
 
     private void findLink(String start, String end) {
         if (Objects.equals(start, end)) return;
+        final int from = g.getID(start), to = g.getID(end);
+        scheduler.submit("Link", task -> {
+            task.progress("Finding link...");
+            return g.shortestPathWithMovies(from, to, true, task.token);
+        }, this::drawLink);
+    }
+
+    private void drawLink(Util.Pair<List<Integer>, List<String>> path, TaskScheduler.Task task) {
         network.forEach(n -> {
             if (Objects.equals(n.getAttribute("ui.class"), "lowlight")) {
                 n.removeAttribute("ui.class");
+                classify(n);
             }
         });
         network.getEachEdge().forEach(e -> {
@@ -111,7 +205,12 @@ final class GraphVisualizer implements Runnable {
                 e.removeAttribute("ui.label");
             }
         });
-        List<Integer> list = g.shortestPath(g.getID(start), g.getID(end));
+        List<Integer> list = path.first;
+        if (list.isEmpty()) {
+            task.progress("They are not linked");
+            return;
+        }
+        task.progress("Link of length " + (list.size() - 1));
         nodesInGraph.addAll(list);
         String last = null;
         int count = 0;
@@ -121,22 +220,35 @@ final class GraphVisualizer implements Runnable {
                 last = name;
                 continue;
             }
-            final Edge edge = addEdge(last, name);
-            if (network.getNode(last).getAttribute("ui.class") == null) {
-                network.getNode(last).setAttribute("ui.class", "lowlight");
-            }
-            edge.setAttribute("ui.class", "lowlight");
-            edge.setAttribute("ui.label", String.valueOf(++count));
+            final String from = last;
+            final String movie = path.second.get(count);
+            final String label = ++count + (movie == null ? "" : ": " + movie);
+            addEdge(from, name, edge -> {
+                lowlight(from);
+                edge.setAttribute("ui.class", "lowlight");
+                edge.setAttribute("ui.label", label);
+            });
             last = name;
         }
-        if (network.getNode(last).getAttribute("ui.class") == null) {
-            network.getNode(last).setAttribute("ui.class", "lowlight");
+        final String end = last;
+        pipeline.stage(network -> lowlight(end));
+        render(task);
+    }
+
+    private void lowlight(String name) {
+        final Node node = network.getNode(name);
+        if (node.getAttribute("ui.class") == null || isCommunityClass(node.getAttribute("ui.class"))) {
+            node.setAttribute("ui.class", "lowlight");
         }
     }
 
     private void getDiameter() {
-        Util.Pair<Integer, Integer> diameter = g.getDiameter();
-        findLink(g.getName(diameter.first), g.getName(diameter.second));
+        scheduler.submit("Diameter", task -> {
+            Util.Pair<Integer, Integer> diameter = g.getExactDiameter((runs, lower, upper) ->
+                    task.progress("Diameter between " + lower + " and " + upper + " after " + runs + " searches"),
+                    task.token);
+            return g.shortestPathWithMovies(diameter.first, diameter.second, true, task.token);
+        }, this::drawLink);
     }
 
     private void disableAll() {
@@ -147,11 +259,77 @@ final class GraphVisualizer implements Runnable {
         comps.forEach(c -> c.setEnabled(true));
     }
 
+    /**
+     * @return Whether actor exists, telling the user what they may have
+     * meant if not
+     */
+    private boolean confirmExists(String actor) {
+        if (g.exists(actor)) {
+            return true;
+        }
+        final String hint = Arrays.stream(g.suggest(actor, false, 3))
+                .mapToObj(g::getName)
+                .collect(Collectors.joining(", "));
+        JOptionPane.showMessageDialog(frame, "The actor/actress does not exist!"
+                + (hint.isEmpty() ? "" : " Did you mean " + hint + "?"));
+        return false;
+    }
+
+    /**
+     * Lists the best connected names starting with what has been typed in
+     * field, or close to it if none do, and fills the field in with the one
+     * picked.
+     */
+    private void addTypeAhead(JTextField field) {
+        final JPopupMenu popup = new JPopupMenu();
+        popup.setFocusable(false);
+        field.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                refresh();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                refresh();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+            }
+
+            private void refresh() {
+                popup.setVisible(false);
+                popup.removeAll();
+                final String text = field.getText();
+                if (g == null || !field.isFocusOwner() || text.length() < 2) {
+                    return;
+                }
+                int[] ids = g.complete(text, SUGGESTIONS);
+                if (ids.length == 0) {
+                    ids = g.suggest(text, true, SUGGESTIONS);
+                }
+                for (int id : ids) {
+                    final String name = g.getName(id);
+                    if (!name.equals(text)) {
+                        final JMenuItem item = new JMenuItem(name);
+                        item.addActionListener(el -> field.setText(name));
+                        popup.add(item);
+                    }
+                }
+                if (popup.getComponentCount() > 0) {
+                    popup.show(field, 0, field.getHeight());
+                }
+            }
+        });
+    }
+
     private Component makeToolBar() {
         final JPanel toolbar = new JPanel();
         final JTextField act = new JTextField(10);
         final JLabel label = new JLabel("Actor/Actress name:");
         final JButton button = new JButton("Add to graph");
+        addTypeAhead(act);
         comps.add(act);
         comps.add(button);
         toolbar.add(label);
@@ -161,15 +339,10 @@ final class GraphVisualizer implements Runnable {
             @Override
             public void mouseClicked(MouseEvent e) {
                 final String actor = act.getText();
-                if (!g.exists(actor)) {
-                    JOptionPane.showMessageDialog(frame,
-                            "The actor/actress does not exist!");
+                if (!confirmExists(actor)) {
                     return;
                 }
-                CallbackRunnable runnable = new CallbackRunnable(() -> displayNeighbors(actor));
-                runnable.callback = () -> enableAll();
-                disableAll();
-                runnable.start();
+                displayNeighbors(actor);
             }
         });
 
@@ -179,6 +352,8 @@ final class GraphVisualizer implements Runnable {
         final JTextField endAct = new JTextField(10);
         final JLabel toLabel = new JLabel("to");
         final JButton linkButton = new JButton("Find link");
+        addTypeAhead(startAct);
+        addTypeAhead(endAct);
         comps.add(startAct);
         comps.add(endAct);
         comps.add(linkButton);
@@ -192,15 +367,10 @@ final class GraphVisualizer implements Runnable {
             public void mouseClicked(MouseEvent e) {
                 final String actor1 = startAct.getText();
                 final String actor2 = endAct.getText();
-                if (!g.exists(actor1) || !g.exists(actor2)) {
-                    JOptionPane.showMessageDialog(frame,
-                            "The actor/actress does not exist!");
+                if (!confirmExists(actor1) || !confirmExists(actor2)) {
                     return;
                 }
-                CallbackRunnable runnable = new CallbackRunnable(() -> findLink(actor1, actor2));
-                runnable.callback = () -> enableAll();
-                disableAll();
-                runnable.start();
+                findLink(actor1, actor2);
             }
         });
 
@@ -213,13 +383,32 @@ final class GraphVisualizer implements Runnable {
         diameterButton.addMouseListener(new MouseAdapter() {
             @Override
             public void mouseClicked(MouseEvent e) {
-                CallbackRunnable runnable = new CallbackRunnable(() -> getDiameter());
-                runnable.callback = () -> enableAll();
-                disableAll();
-                runnable.start();
+                getDiameter();
+            }
+        });
+
+        final JButton cancelButton = new JButton("Cancel");
+        comps.add(cancelButton);
+        toolbar.add(cancelButton);
+
+        cancelButton.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                scheduler.cancelAll();
+                status.setText("Cancelled");
             }
         });
 
+        final JCheckBox animateBox = new JCheckBox("Animate", animate);
+        comps.add(animateBox);
+        toolbar.add(animateBox);
+        animateBox.addItemListener(e -> animate = animateBox.isSelected());
+
+        final JCheckBox communityBox = new JCheckBox("Communities", byCommunity);
+        comps.add(communityBox);
+        toolbar.add(communityBox);
+        communityBox.addItemListener(e -> colourByCommunity(communityBox.isSelected()));
+
         final JButton clearButton = new JButton("Clear visualizer");
         comps.add(clearButton);
         toolbar.add(clearButton);
@@ -227,12 +416,15 @@ final class GraphVisualizer implements Runnable {
         clearButton.addMouseListener(new MouseAdapter() {
             @Override
             public void mouseClicked(MouseEvent e) {
-                Iterator<Node> nodeIterator = network.getNodeIterator();
-                while (nodeIterator.hasNext()) {
-                    nodeIterator.next();
-                    nodeIterator.remove();
-                }
-                nodesInGraph.clear();
+                scheduler.cancelAll();
+                scheduler.apply(() -> {
+                    Iterator<Node> nodeIterator = network.getNodeIterator();
+                    while (nodeIterator.hasNext()) {
+                        nodeIterator.next();
+                        nodeIterator.remove();
+                    }
+                    nodesInGraph.clear();
+                });
             }
         });
 
@@ -241,6 +433,7 @@ final class GraphVisualizer implements Runnable {
 
     private Component getVisualizer() {
         network = new SingleGraph("ActorNetwork");
+        pipeline = new RenderPipeline(network);
         network.setStrict(false);
         Viewer viewer = new Viewer(network, Viewer.ThreadingModel.GRAPH_IN_ANOTHER_THREAD);
         viewer.enableAutoLayout();
@@ -276,7 +469,7 @@ final class GraphVisualizer implements Runnable {
                         final JPopupMenu popup = new JPopupMenu();
                         JMenuItem deleteItem = new JMenuItem("Delete Node");
                         JMenuItem copyText = new JMenuItem("Copy Name");
-                        deleteItem.addActionListener(el -> {
+                        deleteItem.addActionListener(el -> scheduler.apply(() -> {
                             final String id = element.getId();
                             final Node clickedNode = network.getNode(id);
                             List<Node> neighborNodes = new LinkedList<>();
@@ -291,7 +484,7 @@ final class GraphVisualizer implements Runnable {
                                 nodesInGraph.remove(g.getID(n.getId()));
                                 network.removeNode(n);
                             });
-                        });
+                        }));
                         copyText.addActionListener(el -> {
                             final String id = element.getId();
                             Clipboard clipboard = Toolkit.getDefaultToolkit().getSystemClipboard();
@@ -323,10 +516,8 @@ final class GraphVisualizer implements Runnable {
         frame.pack();
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         frame.setVisible(true);
-        CallbackRunnable runnable = new CallbackRunnable(this::init);
-        runnable.callback = this::enableAll;
         disableAll();
-        runnable.start();
+        init();
     }
 
     public static void main(String[] args) {
@@ -0,0 +1,64 @@
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Read-only int sequence backed either by a heap array or by file
+ * mappings. A single mapping is limited to 2GB, so mapped arrays are
+ * split into chunks of 2^CHUNK_SHIFT ints.
+ */
+final class IntArray {
+    private static final int CHUNK_SHIFT = 28;
+    private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+    private final int[] heap;
+    private final IntBuffer[] chunks;
+    private final int length;
+
+    private IntArray(int[] heap, IntBuffer[] chunks, int length) {
+        this.heap = heap;
+        this.chunks = chunks;
+        this.length = length;
+    }
+
+    static IntArray of(int[] a) {
+        return new IntArray(a, null, a.length);
+    }
+
+    /**
+     * Maps length little-endian ints starting at position.
+     */
+    static IntArray map(FileChannel channel, long position, int length) throws IOException {
+        final IntBuffer[] chunks = new IntBuffer[(int) (((long) length + CHUNK_MASK) >>> CHUNK_SHIFT)];
+        for (int c = 0; c < chunks.length; ++c) {
+            final long first = (long) c << CHUNK_SHIFT;
+            final long count = Math.min(length - first, 1L << CHUNK_SHIFT);
+            chunks[c] = channel.map(FileChannel.MapMode.READ_ONLY, position + first * 4, count * 4)
+                    .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        }
+        return new IntArray(null, chunks, length);
+    }
+
+    int length() {
+        return length;
+    }
+
+    int get(int i) {
+        if (heap != null) {
+            return heap[i];
+        }
+        return chunks[i >>> CHUNK_SHIFT].get(i & CHUNK_MASK);
+    }
+
+    int[] copyOfRange(int from, int to) {
+        if (heap != null) {
+            return Arrays.copyOfRange(heap, from, to);
+        }
+        final int[] ret = new int[to - from];
+        for (int i = from; i < to; ++i) {
+            ret[i - from] = get(i);
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,217 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+/**
+ * Distance oracle built from BFS distances to a fixed set of landmark
+ * actors. By the triangle inequality, for every landmark l
+ * |d(u, l) - d(l, v)| <= d(u, v) <= d(u, l) + d(l, v), so both bounds cost
+ * one pass over the landmarks. Distances are kept as unsigned bytes, each
+ * actor's row stored contiguously, and exact queries hand the bounds to a
+ * bidirectional search that only has to beat the upper bound.
+ */
+final class LandmarkIndex {
+    static final int UNKNOWN = Integer.MAX_VALUE;
+    private static final int UNREACHABLE = 0xFF;
+    private static final int MAGIC = 0x4B4D444C;
+    private static final int VERSION = 2;
+    private static final int BUILD_BATCH = 16;
+    private final ActorsNetwork g;
+    private final int[] landmarks;
+    /**
+     * distances[u * landmarks.length + i] is the distance from actor u to
+     * landmarks[i], or UNREACHABLE. Building and loading check that actors
+     * times landmarks fits an array, so the index cannot overflow.
+     */
+    private final byte[] distances;
+
+    private LandmarkIndex(ActorsNetwork g, int[] landmarks, byte[] distances) {
+        this.g = g;
+        this.landmarks = landmarks;
+        this.distances = distances;
+    }
+
+    /**
+     * Uses the count actors of highest degree as landmarks.
+     */
+    static LandmarkIndex build(ActorsNetwork g, int count) {
+        final PriorityQueue<Integer> top = new PriorityQueue<>(
+                (a, b) -> g.getDegree(a) != g.getDegree(b) ? Integer.compare(g.getDegree(a), g.getDegree(b))
+                        : Integer.compare(b, a));
+        for (int u = 0; u < g.getSize(); ++u) {
+            top.add(u);
+            if (top.size() > count) {
+                top.poll();
+            }
+        }
+        return build(g, top.stream().mapToInt(Integer::intValue).sorted().toArray());
+    }
+
+    static LandmarkIndex build(ActorsNetwork g, int[] landmarks) {
+        final int l = landmarks.length;
+        final long cells = (long) g.getSize() * l;
+        if (cells > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException(l + " landmarks over " + g.getSize()
+                    + " actors take more distances than an index holds");
+        }
+        final byte[] distances = new byte[(int) cells];
+        for (int from = 0; from < l; from += BUILD_BATCH) {
+            final int to = Math.min(l, from + BUILD_BATCH);
+            final int[][] rows = g.distanceRows(Arrays.copyOfRange(landmarks, from, to));
+            for (int i = from; i < to; ++i) {
+                final int[] row = rows[i - from];
+                for (int u = 0; u < row.length; ++u) {
+                    if (row[u] >= UNREACHABLE) {
+                        throw new IllegalStateException("Distance " + row[u] + " does not fit the index");
+                    }
+                    distances[u * l + i] = (byte) (row[u] == -1 ? UNREACHABLE : row[u]);
+                }
+            }
+        }
+        return new LandmarkIndex(g, landmarks.clone(), distances);
+    }
+
+    int[] getLandmarks() {
+        return landmarks.clone();
+    }
+
+    private int at(int u, int i) {
+        return distances[u * landmarks.length + i] & 0xFF;
+    }
+
+    /**
+     * @return A distance no shorter than the one between u and v, or UNKNOWN
+     * if no landmark reaches both
+     */
+    int upperBound(int u, int v) {
+        int best = UNKNOWN;
+        for (int i = 0; i < landmarks.length; ++i) {
+            final int du = at(u, i), dv = at(v, i);
+            if (du != UNREACHABLE && dv != UNREACHABLE) {
+                best = Math.min(best, du + dv);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return A distance no longer than the one between u and v, or UNKNOWN
+     * if some landmark reaches exactly one of them, which means they are not
+     * connected
+     */
+    int lowerBound(int u, int v) {
+        int best = 0;
+        for (int i = 0; i < landmarks.length; ++i) {
+            final int du = at(u, i), dv = at(v, i);
+            if ((du == UNREACHABLE) != (dv == UNREACHABLE)) {
+                return UNKNOWN;
+            }
+            if (du != UNREACHABLE) {
+                best = Math.max(best, Math.abs(du - dv));
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return The exact distance between u and v, or -1 if they are not
+     * connected
+     */
+    int distance(int u, int v) {
+        final int lower = lowerBound(u, v);
+        if (lower == UNKNOWN) {
+            return -1;
+        }
+        final int upper = upperBound(u, v);
+        if (lower == upper) {
+            return upper;
+        }
+        return g.distance(u, v, upper, this::lowerBound);
+    }
+
+    /**
+     * Writes the index along with the actor and edge counts of its network
+     * and the tag of the data it was built from, which load() checks before
+     * trusting the file.
+     * @param sourceTag As given to ActorsNetwork.saveSnapshot, or null
+     */
+    void save(Path file, String sourceTag) throws IOException {
+        final Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        final byte[] tag = (sourceTag == null ? "" : sourceTag).getBytes(StandardCharsets.UTF_8);
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            final ByteBuffer header = ByteBuffer.allocate(28 + tag.length + 4 * landmarks.length)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(g.getSize())
+                    .putLong(g.graph().edgeCount()).putInt(tag.length).put(tag).putInt(landmarks.length);
+            for (int l : landmarks) {
+                header.putInt(l);
+            }
+            header.flip();
+            writeFully(channel, header);
+            writeFully(channel, ByteBuffer.wrap(distances));
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @param sourceTag Identifies the data g was built from, or null to
+     * accept an index of any data with the same counts
+     * @return The index stored in file, or null if there is none for g
+     */
+    static LandmarkIndex load(Path file, ActorsNetwork g, String sourceTag) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final ByteBuffer header = ByteBuffer.allocate(24).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, header);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION || header.getInt() != g.getSize()
+                    || header.getLong() != g.graph().edgeCount()) {
+                return null;
+            }
+            final int tagLength = header.getInt();
+            if (tagLength < 0) {
+                throw new IOException("Corrupt landmark index");
+            }
+            final ByteBuffer tag = ByteBuffer.allocate(tagLength + 4).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, tag);
+            final byte[] tagBytes = new byte[tagLength];
+            tag.get(tagBytes);
+            if (sourceTag != null && !sourceTag.equals(new String(tagBytes, StandardCharsets.UTF_8))) {
+                return null;
+            }
+            final int count = tag.getInt();
+            if (count < 0 || (long) g.getSize() * count > Integer.MAX_VALUE - 8) {
+                throw new IOException("Corrupt landmark index");
+            }
+            final ByteBuffer ids = ByteBuffer.allocate(4 * count).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, ids);
+            final int[] landmarks = new int[count];
+            ids.asIntBuffer().get(landmarks);
+            final byte[] distances = new byte[g.getSize() * count];
+            readFully(channel, ByteBuffer.wrap(distances));
+            return new LandmarkIndex(g, landmarks, distances);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException("Truncated landmark index");
+            }
+        }
+        buffer.flip();
+    }
+}
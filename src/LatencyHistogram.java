@@ -0,0 +1,81 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of latencies in microseconds. Buckets are exact below
+ * 16 and then split every power of two into 8, so any recorded value is
+ * reported within 12.5% while the whole range up to hours fits in a few
+ * hundred counters.
+ */
+final class LatencyHistogram {
+    private static final int SUB_BITS = 3;
+    private static final int LINEAR = 2 << SUB_BITS;
+    private final AtomicLongArray counts = new AtomicLongArray(index(Long.MAX_VALUE) + 1);
+    private final LongAdder total = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    private static int index(long micros) {
+        if (micros < LINEAR) {
+            return (int) micros;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        final int sub = (int) (micros >>> (exponent - SUB_BITS)) & ((1 << SUB_BITS) - 1);
+        return LINEAR + ((exponent - SUB_BITS - 1) << SUB_BITS) + sub;
+    }
+
+    /**
+     * @return The largest value that falls in bucket i
+     */
+    private static long upperBound(int i) {
+        if (i < LINEAR) {
+            return i;
+        }
+        final int exponent = ((i - LINEAR) >>> SUB_BITS) + SUB_BITS + 1;
+        final long sub = i & ((1 << SUB_BITS) - 1);
+        final long lower = (1L << exponent) + (sub << (exponent - SUB_BITS));
+        return lower + (1L << (exponent - SUB_BITS)) - 1;
+    }
+
+    void record(long micros) {
+        micros = Math.max(0, micros);
+        counts.incrementAndGet(index(micros));
+        total.increment();
+        sum.add(micros);
+        max.accumulate(micros);
+    }
+
+    long count() {
+        return total.sum();
+    }
+
+    double mean() {
+        final long n = total.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    long max() {
+        return max.get();
+    }
+
+    /**
+     * @param p Between 0 and 100
+     * @return A latency that at least p percent of requests did not exceed
+     */
+    long percentile(double p) {
+        final long n = total.sum();
+        if (n == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(p / 100 * n));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); ++i) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max());
+            }
+        }
+        return max();
+    }
+}
@@ -0,0 +1,74 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * An ActorsNetwork that takes new movies while it serves queries. Every
+ * update builds a new version with ActorsNetwork.withMovies, which shares
+ * all it does not change with the previous one, and publishes it with one
+ * atomic write, so readers never block and each query sees a single
+ * version throughout as long as it keeps the network get() returned.
+ * <p>
+ * Updates leave relocated adjacency behind. Once it reaches a quarter of
+ * the edges, a background thread compacts the latest version and publishes
+ * the copy, unless another update has been published meanwhile, in which
+ * case the next update tries again.
+ */
+final class LiveNetwork {
+    static final private double COMPACT_RATIO = 0.25;
+    private final AtomicReference<ActorsNetwork> current;
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(r -> {
+        final Thread thread = new Thread(r, "network-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private boolean compacting = false;
+
+    LiveNetwork(ActorsNetwork g) {
+        current = new AtomicReference<>(g);
+    }
+
+    /**
+     * @return The latest version
+     */
+    ActorsNetwork get() {
+        return current.get();
+    }
+
+    /**
+     * Applies a delta file of movies in the format of the data set, plain or
+     * compressed with bzip2.
+     * @return The version with the movies added
+     */
+    ActorsNetwork apply(Path delta) throws IOException {
+        final ActorsNetwork.Builder movies = new ActorsNetwork.Builder();
+        new DataProcessing(delta.toString()).acquireData(movies);
+        return apply(movies);
+    }
+
+    /**
+     * @return The version with the movies collected by delta added
+     */
+    synchronized ActorsNetwork apply(ActorsNetwork.Builder delta) {
+        final ActorsNetwork next = current.get().withMovies(delta);
+        current.set(next);
+        final CsrGraph links = next.graph();
+        if (!compacting && links.relocatedEdges() > COMPACT_RATIO * links.edgeCount()) {
+            compacting = true;
+            compactor.execute(() -> compact(next));
+        }
+        return next;
+    }
+
+    private void compact(ActorsNetwork g) {
+        try {
+            current.compareAndSet(g, g.compact());
+        } finally {
+            synchronized (this) {
+                compacting = false;
+            }
+        }
+    }
+}
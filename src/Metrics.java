@@ -0,0 +1,311 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Instrumentation of ingest, graph builds and queries. Each is a JFR event,
+ * recorded only while a recording enables it (java
+ * -XX:StartFlightRecording, or jcmd JFR.start), and also adds to the
+ * counters published over JMX as NAME. Counters are updated once per batch,
+ * build or query, never per edge: the searches total their own work in
+ * locals and fields they keep per search or per task, so the inner loops
+ * cost the same and a disabled event costs a few uncontended adds per
+ * query.
+ */
+final class Metrics implements NetworkMetricsMXBean {
+    static final String NAME = "edu.upenn.nets150:type=NetworkMetrics";
+    private static final Metrics INSTANCE = register(new Metrics());
+
+    private final LongAdder lines = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private volatile long ingestStart = 0;
+    private volatile long ingestEnd = 0;
+    private volatile long ingestLinesBefore = 0;
+    private final LongAdder builds = new LongAdder();
+    private volatile int lastNodes = 0;
+    private volatile long lastEdges = 0;
+    private volatile long lastBytes = 0;
+    /**
+     * Count and total nanoseconds by kind of query.
+     */
+    private final Map<String, LongAdder[]> queries = new ConcurrentHashMap<>();
+    private final LongAdder visited = new LongAdder();
+    private final LongAdder scanned = new LongAdder();
+    private final LongAccumulator maxFrontier = new LongAccumulator(Math::max, 0);
+
+    private Metrics() {
+    }
+
+    private static Metrics register(Metrics metrics) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(
+                    new StandardMBean(metrics, NetworkMetricsMXBean.class, true), new ObjectName(NAME));
+        } catch (JMException | SecurityException ignored) {
+            // Still counts, just not visible over JMX
+        }
+        return metrics;
+    }
+
+    static Metrics get() {
+        return INSTANCE;
+    }
+
+    @Name("nets150.Ingest")
+    @Label("Ingest")
+    @Category("Actors Network")
+    @Description("Reading the whole data set")
+    static final class Ingest extends Event {
+        @Label("Source")
+        String source;
+        @Label("Lines")
+        long lines;
+        @Label("Bytes")
+        @Description("Decompressed bytes read")
+        @DataAmount
+        long bytes;
+        @Label("Parse Failures")
+        long failures;
+
+        synchronized void batch(int lines, int bytes) {
+            this.lines += lines;
+            this.bytes += bytes;
+            INSTANCE.lines.add(lines);
+            INSTANCE.bytes.add(bytes);
+        }
+
+        synchronized void failed() {
+            ++failures;
+            INSTANCE.failures.increment();
+        }
+
+        synchronized void finish() {
+            INSTANCE.ingestEnd = System.nanoTime();
+            end();
+            if (shouldCommit()) {
+                commit();
+            }
+        }
+    }
+
+    @Name("nets150.IngestBatch")
+    @Label("Ingest Batch")
+    @Category("Actors Network")
+    @Description("Parsing one batch of lines")
+    static final class Batch extends Event {
+        @Label("Lines")
+        int lines;
+        @Label("Bytes")
+        @DataAmount
+        int bytes;
+
+        void finish(int lines, int bytes) {
+            end();
+            if (shouldCommit()) {
+                this.lines = lines;
+                this.bytes = bytes;
+                commit();
+            }
+        }
+    }
+
+    @Name("nets150.Build")
+    @Label("Graph Build")
+    @Category("Actors Network")
+    @Description("Building or updating a network")
+    static final class Build extends Event {
+        @Label("Kind")
+        String kind;
+        @Label("Nodes")
+        int nodes;
+        @Label("Actors")
+        int actors;
+        @Label("Edges")
+        long edges;
+        @Label("Graph Size")
+        @DataAmount
+        long bytes;
+        @Label("Heap Used")
+        @DataAmount
+        long heapUsed;
+
+        ActorsNetwork finish(ActorsNetwork g) {
+            end();
+            final CsrGraph links = g.graph();
+            INSTANCE.builds.increment();
+            INSTANCE.lastNodes = links.size();
+            INSTANCE.lastEdges = links.edgeCount();
+            INSTANCE.lastBytes = links.bytes();
+            if (shouldCommit()) {
+                nodes = links.size();
+                actors = g.getSize();
+                edges = links.edgeCount();
+                bytes = links.bytes();
+                heapUsed = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+                commit();
+            }
+            return g;
+        }
+    }
+
+    @Name("nets150.Query")
+    @Label("Graph Query")
+    @Category("Actors Network")
+    static final class Query extends Event {
+        @Label("Kind")
+        String kind;
+        @Label("Visited Nodes")
+        long visitedNodes;
+        @Label("Scanned Edges")
+        long scannedEdges;
+        @Label("Largest Frontier")
+        long maxFrontier;
+        private final transient long start = System.nanoTime();
+
+        void finish(long visited, long scanned, long frontier) {
+            end();
+            INSTANCE.query(kind, System.nanoTime() - start, visited, scanned, frontier);
+            if (shouldCommit()) {
+                visitedNodes = visited;
+                scannedEdges = scanned;
+                maxFrontier = frontier;
+                commit();
+            }
+        }
+    }
+
+    /**
+     * Starts timing the ingest of the data set at source.
+     */
+    static Ingest ingest(String source) {
+        INSTANCE.ingestStart = System.nanoTime();
+        INSTANCE.ingestEnd = 0;
+        INSTANCE.ingestLinesBefore = INSTANCE.lines.sum();
+        final Ingest event = new Ingest();
+        event.source = source;
+        event.begin();
+        return event;
+    }
+
+    static Batch batch() {
+        final Batch event = new Batch();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * @param kind How the network is made, e.g. "cliques" or "update"
+     */
+    static Build build(String kind) {
+        final Build event = new Build();
+        event.kind = kind;
+        event.begin();
+        return event;
+    }
+
+    static Query query(String kind) {
+        final Query event = new Query();
+        event.kind = kind;
+        event.begin();
+        return event;
+    }
+
+    private void query(String kind, long nanos, long visited, long scanned, long frontier) {
+        final LongAdder[] totals = queries.computeIfAbsent(kind, k -> new LongAdder[]{new LongAdder(), new LongAdder()});
+        totals[0].increment();
+        totals[1].add(nanos);
+        this.visited.add(visited);
+        this.scanned.add(scanned);
+        maxFrontier.accumulate(frontier);
+    }
+
+    @Override
+    public long getIngestedLines() {
+        return lines.sum();
+    }
+
+    @Override
+    public long getIngestedBytes() {
+        return bytes.sum();
+    }
+
+    @Override
+    public long getParseFailures() {
+        return failures.sum();
+    }
+
+    @Override
+    public double getIngestLinesPerSecond() {
+        final long start = ingestStart, end = ingestEnd;
+        if (start == 0) {
+            return 0;
+        }
+        final double seconds = ((end != 0 ? end : System.nanoTime()) - start) / 1e9;
+        return seconds <= 0 ? 0 : (lines.sum() - ingestLinesBefore) / seconds;
+    }
+
+    @Override
+    public long getBuilds() {
+        return builds.sum();
+    }
+
+    @Override
+    public int getLastBuildNodes() {
+        return lastNodes;
+    }
+
+    @Override
+    public long getLastBuildEdges() {
+        return lastEdges;
+    }
+
+    @Override
+    public long getLastBuildBytes() {
+        return lastBytes;
+    }
+
+    @Override
+    public Map<String, Long> getQueries() {
+        final Map<String, Long> ret = new TreeMap<>();
+        queries.forEach((kind, totals) -> ret.put(kind, totals[0].sum()));
+        return ret;
+    }
+
+    @Override
+    public Map<String, Double> getMeanLatencyMillis() {
+        final Map<String, Double> ret = new TreeMap<>();
+        queries.forEach((kind, totals) -> {
+            final long count = totals[0].sum();
+            ret.put(kind, count == 0 ? 0 : totals[1].sum() / 1e6 / count);
+        });
+        return ret;
+    }
+
+    @Override
+    public long getVisitedNodes() {
+        return visited.sum();
+    }
+
+    @Override
+    public long getScannedEdges() {
+        return scanned.sum();
+    }
+
+    @Override
+    public long getMaxFrontier() {
+        return maxFrontier.get();
+    }
+}
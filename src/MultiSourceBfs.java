@@ -0,0 +1,183 @@
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Bit-parallel multi-source BFS (Then et al., "The More the Merrier"). Up to
+ * 64 * words sources share one traversal: every node carries one bit per
+ * source for "seen" and for "reached in the current level", so a level costs
+ * one scan of the adjacency no matter how many sources advance through it.
+ * Levels are computed by pulling, each node ORing its neighbors' frontier
+ * bits, so node ranges can run in parallel without synchronization.
+ * <p>
+ * Only nodes below actors are counted, and their levels are divided by hop,
+ * which makes the results actor distances in bipartite graphs too.
+ */
+final class MultiSourceBfs {
+    private static final int GRAIN = 1 << 12;
+    private final CsrGraph links;
+    private final int actors;
+    private final int hop;
+    private final int words;
+
+    MultiSourceBfs(CsrGraph links, int actors, int hop, int words) {
+        this.links = links;
+        this.actors = actors;
+        this.hop = hop;
+        this.words = words;
+    }
+
+    static final class Result {
+        /**
+         * histograms[i][d] is the number of actors at distance d from source i.
+         */
+        final long[][] histograms;
+        /**
+         * Distances from each source to every actor, or null if not requested.
+         */
+        final int[][] rows;
+
+        private Result(long[][] histograms, int[][] rows) {
+            this.histograms = histograms;
+            this.rows = rows;
+        }
+
+        int eccentricity(int i) {
+            return histograms[i].length - 1;
+        }
+    }
+
+    /**
+     * @param token Checked before every level
+     */
+    Result run(int[] sources, boolean keepRows, CancellationToken token) {
+        final long[][] histograms = new long[sources.length][];
+        final int[][] rows = keepRows ? new int[sources.length][] : null;
+        final int batch = 64 * words;
+        for (int from = 0; from < sources.length; from += batch) {
+            final int[] part = Arrays.copyOfRange(sources, from, Math.min(sources.length, from + batch));
+            final int[][] partRows = keepRows ? new int[part.length][actors] : null;
+            final long[][] partHistograms = runBatch(part, partRows, token);
+            System.arraycopy(partHistograms, 0, histograms, from, part.length);
+            if (keepRows) {
+                System.arraycopy(partRows, 0, rows, from, part.length);
+            }
+        }
+        return new Result(histograms, rows);
+    }
+
+    private long[][] runBatch(int[] sources, int[][] rows, CancellationToken token) {
+        final int n = links.size();
+        final long[] seen = new long[n * words];
+        long[] visit = new long[n * words];
+        long[] next = new long[n * words];
+        final long[][] counts = new long[sources.length][8];
+        if (rows != null) {
+            for (int[] row : rows) {
+                Arrays.fill(row, -1);
+            }
+        }
+        for (int i = 0; i < sources.length; ++i) {
+            final int slot = sources[i] * words + (i >>> 6);
+            seen[slot] |= 1L << i;
+            visit[slot] |= 1L << i;
+            counts[i][0] = 1;
+            if (rows != null) {
+                rows[i][sources[i]] = 0;
+            }
+        }
+        final long[] full = new long[words];
+        for (int i = 0; i < sources.length; ++i) {
+            full[i >>> 6] |= 1L << i;
+        }
+        final int[] depth = new int[sources.length];
+        for (int level = 1; ; ++level) {
+            token.check();
+            final long[] frontier = visit, reached = next;
+            final int distance = level / hop;
+            final boolean counted = level % hop == 0;
+            final int chunks = (n + GRAIN - 1) / GRAIN;
+            final long[] levelCounts = IntStream.range(0, chunks).parallel()
+                    .mapToObj(c -> pull(c * GRAIN, Math.min(n, (c + 1) * GRAIN), frontier, reached, seen,
+                            full, sources.length, counted, rows, distance))
+                    .reduce(new long[sources.length + 1], MultiSourceBfs::sum);
+            if (levelCounts[sources.length] == 0) {
+                break;
+            }
+            if (counted) {
+                for (int i = 0; i < sources.length; ++i) {
+                    if (levelCounts[i] > 0) {
+                        if (distance >= counts[i].length) {
+                            counts[i] = Arrays.copyOf(counts[i], counts[i].length * 2);
+                        }
+                        counts[i][distance] = levelCounts[i];
+                        depth[i] = distance;
+                    }
+                }
+            }
+            visit = reached;
+            next = frontier;
+        }
+        final long[][] histograms = new long[sources.length][];
+        for (int i = 0; i < sources.length; ++i) {
+            histograms[i] = Arrays.copyOf(counts[i], depth[i] + 1);
+        }
+        return histograms;
+    }
+
+    /**
+     * Computes the next level for nodes [from, to). The last slot of the
+     * returned counts is the number of nodes reached by any source.
+     */
+    private long[] pull(int from, int to, long[] frontier, long[] reached, long[] seen, long[] full,
+                        int sources, boolean counted, int[][] rows, int distance) {
+        final long[] counts = new long[sources + 1];
+        final long[] gathered = new long[words];
+        for (int v = from; v < to; ++v) {
+            final int base = v * words;
+            Arrays.fill(gathered, 0);
+            boolean pending = false;
+            for (int j = 0; j < words; ++j) {
+                pending |= (seen[base + j] & full[j]) != full[j];
+            }
+            if (pending) {
+                for (int i = links.begin(v), end = links.end(v); i < end; ++i) {
+                    final int w = links.target(i) * words;
+                    for (int j = 0; j < words; ++j) {
+                        gathered[j] |= frontier[w + j];
+                    }
+                }
+            }
+            boolean found = false;
+            for (int j = 0; j < words; ++j) {
+                final long fresh = gathered[j] & ~seen[base + j];
+                reached[base + j] = fresh;
+                if (fresh == 0) {
+                    continue;
+                }
+                found = true;
+                seen[base + j] |= fresh;
+                if (counted && v < actors) {
+                    for (long bits = fresh; bits != 0; bits &= bits - 1) {
+                        final int i = (j << 6) + Long.numberOfTrailingZeros(bits);
+                        ++counts[i];
+                        if (rows != null) {
+                            rows[i][v] = distance;
+                        }
+                    }
+                }
+            }
+            if (found) {
+                ++counts[counts.length - 1];
+            }
+        }
+        return counts;
+    }
+
+    private static long[] sum(long[] a, long[] b) {
+        final long[] total = a.clone();
+        for (int i = 0; i < b.length; ++i) {
+            total[i] += b[i];
+        }
+        return total;
+    }
+}
@@ -0,0 +1,333 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Actor names stored once, as UTF-8 bytes in a single arena laid out in
+ * byte order of the names, with the id at each position and the position of
+ * each id. Exact lookup and prefix completion are binary searches over that
+ * order, and scans of neighboring names touch neighboring memory. Since names
+ * sharing a prefix are contiguous, the sorted ids also act as an implicit
+ * trie for fuzzy search: the edit distance rows of a prefix are computed
+ * once for every name that shares it, and the whole run of names below a
+ * prefix is skipped as soon as no extension of it can come close enough.
+ * <p>
+ * The arena and the int sequences can be mapped from a snapshot, so names
+ * cost no heap beyond the Strings handed out by name().
+ */
+final class NameDictionary {
+    interface Match {
+        void accept(int id, int edits);
+    }
+
+    private final ByteBuffer arena;
+    /**
+     * The name at position r is arena[offsets[r], offsets[r + 1]).
+     */
+    private final IntArray offsets;
+    /**
+     * Ids by position, i.e. ordered by the unsigned bytes of their names.
+     */
+    private final IntArray ids;
+    /**
+     * Positions by id.
+     */
+    private final IntArray ranks;
+
+    NameDictionary(ByteBuffer arena, IntArray offsets, IntArray ids, IntArray ranks) {
+        this.arena = arena;
+        this.offsets = offsets;
+        this.ids = ids;
+        this.ranks = ranks;
+    }
+
+    static NameDictionary of(String[] names) {
+        final byte[][] encoded = new byte[names.length][];
+        for (int i = 0; i < names.length; ++i) {
+            encoded[i] = names[i].getBytes(StandardCharsets.UTF_8);
+        }
+        final int[] ids = IntStream.range(0, names.length).boxed()
+                .sorted((a, b) -> compare(encoded[a], encoded[b]))
+                .mapToInt(Integer::intValue)
+                .toArray();
+        final int[] ranks = new int[names.length];
+        final int[] offsets = new int[names.length + 1];
+        for (int r = 0; r < names.length; ++r) {
+            ranks[ids[r]] = r;
+            if ((long) offsets[r] + encoded[ids[r]].length > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Names do not fit in one arena");
+            }
+            offsets[r + 1] = offsets[r] + encoded[ids[r]].length;
+        }
+        final byte[] arena = new byte[offsets[names.length]];
+        for (int r = 0; r < names.length; ++r) {
+            System.arraycopy(encoded[ids[r]], 0, arena, offsets[r], encoded[ids[r]].length);
+        }
+        return new NameDictionary(ByteBuffer.wrap(arena).asReadOnlyBuffer(),
+                IntArray.of(offsets), IntArray.of(ids), IntArray.of(ranks));
+    }
+
+    /**
+     * @return A dictionary that also holds added, as ids size() onwards.
+     * The new names are sorted on their own and merged into the existing
+     * order in one linear pass, which is much cheaper than sorting again.
+     */
+    NameDictionary withNames(String[] added) {
+        if (added.length == 0) {
+            return this;
+        }
+        final int n = size(), total = n + added.length;
+        final byte[][] encoded = new byte[added.length][];
+        long bytes = offsets.get(n);
+        for (int i = 0; i < added.length; ++i) {
+            encoded[i] = added[i].getBytes(StandardCharsets.UTF_8);
+            bytes += encoded[i].length;
+        }
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Names do not fit in one arena");
+        }
+        final int[] order = IntStream.range(0, added.length).boxed()
+                .sorted((a, b) -> compare(encoded[a], encoded[b]))
+                .mapToInt(Integer::intValue)
+                .toArray();
+        final byte[] merged = new byte[(int) bytes];
+        final int[] mergedOffsets = new int[total + 1];
+        final int[] mergedIds = new int[total];
+        final int[] mergedRanks = new int[total];
+        final ByteBuffer source = arena.duplicate();
+        for (int r = 0, i = 0, j = 0; r < total; ++r) {
+            final int at = mergedOffsets[r];
+            if (j == added.length || (i < n && compare(i, encoded[order[j]], encoded[order[j]].length, false) <= 0)) {
+                final int from = offsets.get(i), length = offsets.get(i + 1) - from;
+                source.position(from);
+                source.get(merged, at, length);
+                mergedIds[r] = ids.get(i++);
+                mergedOffsets[r + 1] = at + length;
+            } else {
+                final byte[] name = encoded[order[j]];
+                System.arraycopy(name, 0, merged, at, name.length);
+                mergedIds[r] = n + order[j++];
+                mergedOffsets[r + 1] = at + name.length;
+            }
+            mergedRanks[mergedIds[r]] = r;
+        }
+        return new NameDictionary(ByteBuffer.wrap(merged).asReadOnlyBuffer(),
+                IntArray.of(mergedOffsets), IntArray.of(mergedIds), IntArray.of(mergedRanks));
+    }
+
+    private static int compare(byte[] a, byte[] b) {
+        final int length = Math.min(a.length, b.length);
+        for (int i = 0; i < length; ++i) {
+            if (a[i] != b[i]) {
+                return Integer.compare(a[i] & 0xFF, b[i] & 0xFF);
+            }
+        }
+        return Integer.compare(a.length, b.length);
+    }
+
+    int size() {
+        return ids.length();
+    }
+
+    ByteBuffer arena() {
+        return arena.duplicate();
+    }
+
+    IntArray offsets() {
+        return offsets;
+    }
+
+    IntArray ids() {
+        return ids;
+    }
+
+    IntArray ranks() {
+        return ranks;
+    }
+
+    String name(int id) {
+        final int rank = ranks.get(id);
+        final int from = offsets.get(rank);
+        final byte[] bytes = new byte[offsets.get(rank + 1) - from];
+        for (int i = 0; i < bytes.length; ++i) {
+            bytes[i] = arena.get(from + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return The id of the actor named k, or -1 if there is none
+     */
+    int find(String k) {
+        final byte[] key = k.getBytes(StandardCharsets.UTF_8);
+        final int at = lowerBound(key, key.length, 0, size(), false);
+        return at < size() && compare(at, key, key.length, false) == 0 ? ids.get(at) : -1;
+    }
+
+    /**
+     * Visits every actor whose name starts with prefix, in name order.
+     */
+    void forEachWithPrefix(String prefix, IntConsumer action) {
+        final byte[] key = prefix.getBytes(StandardCharsets.UTF_8);
+        final int end = lowerBound(key, key.length, 0, size(), true);
+        for (int i = lowerBound(key, key.length, 0, size(), false); i < end; ++i) {
+            action.accept(ids.get(i));
+        }
+    }
+
+    /**
+     * Visits every actor whose name is within maxEdits insertions, deletions
+     * or substitutions of query, ignoring case.
+     * @param prefix If true, a name matches when any prefix of it is close
+     * enough, which suits queries that are still being typed
+     */
+    void forEachWithin(String query, int maxEdits, boolean prefix, Match match) {
+        final int[] q = query.codePoints().map(Character::toLowerCase).toArray();
+        final int m = q.length;
+        int[][] rows = new int[16][m + 1];
+        int[] best = new int[16];
+        for (int j = 0; j <= m; ++j) {
+            rows[0][j] = j;
+        }
+        best[0] = m;
+        int[] name = new int[16], previous = new int[16];
+        int[] ends = new int[17];
+        byte[] scratch = new byte[64];
+        // Rows 0..valid were computed for the first valid code points of the
+        // previous name.
+        int valid = 0, previousLength = 0;
+        for (int i = 0; i < size(); ) {
+            final int from = offsets.get(i), to = offsets.get(i + 1);
+            int length = 0;
+            for (int p = from; p < to; ) {
+                if (length == name.length) {
+                    name = Arrays.copyOf(name, length * 2);
+                    previous = Arrays.copyOf(previous, length * 2);
+                    ends = Arrays.copyOf(ends, length * 2 + 1);
+                }
+                final int lead = arena.get(p) & 0xFF;
+                final int width = lead < 0x80 ? 1 : lead < 0xE0 ? 2 : lead < 0xF0 ? 3 : 4;
+                int c = width == 1 ? lead : lead & (0xFF >>> (width + 1));
+                for (int k = 1; k < width && p + k < to; ++k) {
+                    c = c << 6 | arena.get(p + k) & 0x3F;
+                }
+                p = Math.min(to, p + width);
+                name[length] = Character.toLowerCase(c);
+                ends[++length] = p - from;
+            }
+            if (length >= rows.length) {
+                final int grown = Math.max(rows.length * 2, length + 1);
+                rows = Arrays.copyOf(rows, grown);
+                for (int k = 0; k < grown; ++k) {
+                    if (rows[k] == null) {
+                        rows[k] = new int[m + 1];
+                    }
+                }
+                best = Arrays.copyOf(best, grown);
+            }
+            int shared = 0;
+            while (shared < valid && shared < length && shared < previousLength && name[shared] == previous[shared]) {
+                ++shared;
+            }
+            int pruned = -1;
+            for (int k = shared + 1; k <= length; ++k) {
+                final int[] above = rows[k - 1], row = rows[k];
+                row[0] = k;
+                int min = k;
+                for (int j = 1; j <= m; ++j) {
+                    row[j] = Math.min(Math.min(above[j], row[j - 1]) + 1,
+                            above[j - 1] + (name[k - 1] == q[j - 1] ? 0 : 1));
+                    min = Math.min(min, row[j]);
+                }
+                best[k] = Math.min(best[k - 1], row[m]);
+                if (min > maxEdits) {
+                    pruned = k;
+                    break;
+                }
+            }
+            final int[] swap = previous;
+            previous = name;
+            name = swap;
+            previousLength = length;
+            if (pruned != -1) {
+                valid = pruned - 1;
+                final int bytes = ends[pruned];
+                if (bytes > scratch.length) {
+                    scratch = new byte[Math.max(scratch.length * 2, bytes)];
+                }
+                for (int b = 0; b < bytes; ++b) {
+                    scratch[b] = arena.get(from + b);
+                }
+                final int end = skip(scratch, bytes, i + 1);
+                // No extension comes close, but in prefix mode a shorter
+                // prefix may already have, and then so does every name here.
+                if (prefix && best[pruned] <= maxEdits) {
+                    for (; i < end; ++i) {
+                        match.accept(ids.get(i), best[pruned]);
+                    }
+                }
+                i = end;
+                continue;
+            }
+            valid = length;
+            final int edits = prefix ? best[length] : rows[length][m];
+            if (edits <= maxEdits) {
+                match.accept(ids.get(i), edits);
+            }
+            ++i;
+        }
+    }
+
+    /**
+     * @return The end of the run of names starting with key, given that the
+     * run reaches from. Runs are usually short, so the search gallops
+     * forward from there instead of touching the whole array.
+     */
+    private int skip(byte[] key, int len, int from) {
+        int lo = from, step = 1;
+        while (lo < size() && compare(lo, key, len, true) == 0) {
+            from = lo + 1;
+            lo = (int) Math.min(size(), (long) lo + step);
+            step <<= 1;
+        }
+        return lowerBound(key, len, from, lo, true);
+    }
+
+    /**
+     * @param truncate If true, names are cut to len bytes before comparing,
+     * so the result is the end of the run of names starting with key
+     * @return The first position in [from, to) whose name is not below key,
+     * or to if there is none
+     */
+    private int lowerBound(byte[] key, int len, int from, int to, boolean truncate) {
+        int lo = from, hi = to;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            final int cmp = compare(mid, key, len, truncate);
+            if (cmp < 0 || truncate && cmp == 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private int compare(int rank, byte[] key, int len, boolean truncate) {
+        final int from = offsets.get(rank);
+        final int length = offsets.get(rank + 1) - from;
+        final int common = Math.min(length, len);
+        for (int i = 0; i < common; ++i) {
+            final int a = arena.get(from + i) & 0xFF, b = key[i] & 0xFF;
+            if (a != b) {
+                return Integer.compare(a, b);
+            }
+        }
+        if (length < len) {
+            return -1;
+        }
+        return truncate || length == len ? 0 : 1;
+    }
+}
@@ -0,0 +1,42 @@
+import java.util.Map;
+
+/**
+ * Counters published over JMX by Metrics, cumulative since the JVM started
+ * unless noted.
+ */
+public interface NetworkMetricsMXBean {
+    long getIngestedLines();
+
+    long getIngestedBytes();
+
+    long getParseFailures();
+
+    /**
+     * @return Lines per second of the ingest in progress, or of the last one
+     */
+    double getIngestLinesPerSecond();
+
+    long getBuilds();
+
+    int getLastBuildNodes();
+
+    long getLastBuildEdges();
+
+    long getLastBuildBytes();
+
+    /**
+     * @return Queries answered, by kind
+     */
+    Map<String, Long> getQueries();
+
+    /**
+     * @return Mean latency in milliseconds, by kind
+     */
+    Map<String, Double> getMeanLatencyMillis();
+
+    long getVisitedNodes();
+
+    long getScannedEdges();
+
+    long getMaxFrontier();
+}
@@ -0,0 +1,212 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Level-synchronous, direction-optimizing breadth-first search (Beamer et
+ * al.) over a CsrGraph. Each level is split into word-aligned node ranges
+ * that run as fork/join tasks. Small frontiers are expanded top-down, pushing
+ * from frontier nodes to their neighbors; once the frontier's edges outweigh
+ * the unvisited edges by ALPHA, levels run bottom-up instead, with every
+ * unvisited node looking for any parent in the frontier and stopping at the
+ * first one. On a graph of tiny diameter and huge hubs most of the work sits
+ * in the one or two levels that bottom-up steps finish cheaply.
+ */
+final class ParallelBfs {
+    private static final int ALPHA = 14;
+    private static final int BETA = 24;
+    private static final int GRAIN_WORDS = 256;
+    private final CsrGraph links;
+    private final ForkJoinPool pool;
+
+    ParallelBfs(CsrGraph links) {
+        this(links, ForkJoinPool.commonPool());
+    }
+
+    ParallelBfs(CsrGraph links, ForkJoinPool pool) {
+        this.links = links;
+        this.pool = pool;
+    }
+
+    /**
+     * Work done by one search.
+     */
+    static final class Stats {
+        long visited;
+        long scanned;
+        long maxFrontier;
+        int levels;
+    }
+
+    /**
+     * @param token Checked before every level
+     * @return The hop distance from source to every node, or -1 where a node
+     * cannot be reached
+     */
+    int[] distances(int source, CancellationToken token) {
+        return distances(source, token, new Stats());
+    }
+
+    /**
+     * @param stats Receives the nodes reached, the edges looked at, the
+     * largest level and the number of levels
+     */
+    int[] distances(int source, CancellationToken token, Stats stats) {
+        final int n = links.size();
+        final int words = (n + 63) >>> 6;
+        final int[] distance = new int[n];
+        Arrays.fill(distance, -1);
+        final AtomicLongArray visited = new AtomicLongArray(words);
+        AtomicLongArray frontier = new AtomicLongArray(words);
+        distance[source] = 0;
+        visited.set(source >>> 6, 1L << source);
+        frontier.set(source >>> 6, 1L << source);
+        long frontierNodes = 1;
+        long frontierEdges = links.degree(source);
+        stats.visited = 1;
+        stats.scanned = 0;
+        stats.maxFrontier = 1;
+        stats.levels = 0;
+        long unvisitedEdges = links.edgeCount() - frontierEdges;
+        boolean bottomUp = false;
+        for (int level = 0; frontierNodes > 0; ++level) {
+            token.check();
+            if (!bottomUp && frontierEdges > unvisitedEdges / ALPHA) {
+                bottomUp = true;
+            } else if (bottomUp && frontierNodes < n / BETA) {
+                bottomUp = false;
+            }
+            final Step step = new Step(bottomUp, level, distance, visited, frontier,
+                    new AtomicLongArray(words), 0, words);
+            pool.invoke(step);
+            frontier = step.next;
+            frontierNodes = step.nodes.sum();
+            frontierEdges = step.edges.sum();
+            unvisitedEdges -= frontierEdges;
+            stats.visited += frontierNodes;
+            stats.scanned += step.probes.sum();
+            stats.maxFrontier = Math.max(stats.maxFrontier, frontierNodes);
+            stats.levels = level + 1;
+        }
+        return distance;
+    }
+
+    private final class Step extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        final boolean bottomUp;
+        final int level;
+        final int[] distance;
+        final AtomicLongArray visited, frontier, next;
+        final int fromWord, toWord;
+        final LongAdder nodes, edges, probes;
+
+        Step(boolean bottomUp, int level, int[] distance, AtomicLongArray visited,
+             AtomicLongArray frontier, AtomicLongArray next, int fromWord, int toWord) {
+            this(bottomUp, level, distance, visited, frontier, next, fromWord, toWord,
+                    new LongAdder(), new LongAdder(), new LongAdder());
+        }
+
+        private Step(boolean bottomUp, int level, int[] distance, AtomicLongArray visited,
+                     AtomicLongArray frontier, AtomicLongArray next, int fromWord, int toWord,
+                     LongAdder nodes, LongAdder edges, LongAdder probes) {
+            this.bottomUp = bottomUp;
+            this.level = level;
+            this.distance = distance;
+            this.visited = visited;
+            this.frontier = frontier;
+            this.next = next;
+            this.fromWord = fromWord;
+            this.toWord = toWord;
+            this.nodes = nodes;
+            this.edges = edges;
+            this.probes = probes;
+        }
+
+        @Override
+        protected void compute() {
+            if (toWord - fromWord > GRAIN_WORDS) {
+                final int mid = (fromWord + toWord) >>> 1;
+                invokeAll(new Step(bottomUp, level, distance, visited, frontier, next, fromWord, mid,
+                                nodes, edges, probes),
+                        new Step(bottomUp, level, distance, visited, frontier, next, mid, toWord,
+                                nodes, edges, probes));
+            } else if (bottomUp) {
+                bottomUp();
+            } else {
+                topDown();
+            }
+        }
+
+        private void topDown() {
+            long found = 0, scanned = 0, probed = 0;
+            for (int word = fromWord; word < toWord; ++word) {
+                for (long bits = frontier.get(word); bits != 0; bits &= bits - 1) {
+                    final int u = (word << 6) + Long.numberOfTrailingZeros(bits);
+                    probed += links.degree(u);
+                    for (int i = links.begin(u), end = links.end(u); i < end; ++i) {
+                        final int w = links.target(i);
+                        if (claim(visited, w)) {
+                            distance[w] = level + 1;
+                            claim(next, w);
+                            ++found;
+                            scanned += links.degree(w);
+                        }
+                    }
+                }
+            }
+            nodes.add(found);
+            edges.add(scanned);
+            probes.add(probed);
+        }
+
+        private void bottomUp() {
+            final int n = distance.length;
+            long found = 0, scanned = 0, probed = 0;
+            for (int word = fromWord; word < toWord; ++word) {
+                long unvisited = ~visited.get(word);
+                if (word == (n - 1) >>> 6 && (n & 63) != 0) {
+                    unvisited &= (1L << (n & 63)) - 1;
+                }
+                long discovered = 0;
+                for (; unvisited != 0; unvisited &= unvisited - 1) {
+                    final int v = (word << 6) + Long.numberOfTrailingZeros(unvisited);
+                    final int begin = links.begin(v), end = links.end(v);
+                    int i = begin;
+                    while (i < end) {
+                        final int u = links.target(i++);
+                        if ((frontier.get(u >>> 6) & (1L << u)) != 0) {
+                            distance[v] = level + 1;
+                            discovered |= 1L << v;
+                            ++found;
+                            scanned += links.degree(v);
+                            break;
+                        }
+                    }
+                    probed += i - begin;
+                }
+                if (discovered != 0) {
+                    visited.set(word, visited.get(word) | discovered);
+                    next.set(word, discovered);
+                }
+            }
+            nodes.add(found);
+            edges.add(scanned);
+            probes.add(probed);
+        }
+    }
+
+    private static boolean claim(AtomicLongArray bits, int u) {
+        final int word = u >>> 6;
+        final long mask = 1L << u;
+        long old;
+        do {
+            old = bits.get(word);
+            if ((old & mask) != 0) {
+                return false;
+            }
+        } while (!bits.compareAndSet(word, old, old | mask));
+        return true;
+    }
+}
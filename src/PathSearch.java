@@ -0,0 +1,232 @@
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.IntBinaryOperator;
+
+/**
+ * Bidirectional breadth-first search between two nodes of a CsrGraph. Each
+ * round expands one whole level of whichever side has fewer edges to scan,
+ * so a search between two hubs meets in the middle instead of sweeping the
+ * graph from one end.
+ * <p>
+ * Visited marks are stamped with a per-search epoch, which lets one
+ * instance be reused without clearing its arrays. Both sides share a single
+ * queue, the source side filling it from the front and the target side from
+ * the back, since no node is ever queued by both. An instance must not be
+ * shared between threads.
+ */
+final class PathSearch {
+    private final CsrGraph links;
+    private final int[] seen;
+    private final int[] parent;
+    private final int[] queue;
+    private int epoch = 0;
+    /**
+     * Work done by the last search: nodes queued, edges of the levels it
+     * expanded, and the largest level expanded.
+     */
+    private int visited;
+    private long scanned;
+    private int maxFrontier;
+
+    PathSearch(CsrGraph links) {
+        this.links = links;
+        final int n = links.size();
+        seen = new int[n];
+        parent = new int[n];
+        queue = new int[n];
+    }
+
+    /**
+     * @param random If not null, neighbors are scanned from a random offset
+     * and the meeting edge is drawn at random, so repeated queries can return
+     * different paths of the same length
+     * @param token Checked before every level
+     * @return The nodes of a shortest path from s to t, or null if there is
+     * none
+     */
+    int[] path(int s, int t, Random random, CancellationToken token) {
+        startStats(s == t ? 1 : 2);
+        if (s == t) {
+            return new int[]{s};
+        }
+        if (epoch >= Integer.MAX_VALUE - 2) {
+            Arrays.fill(seen, 0);
+            epoch = 0;
+        }
+        epoch += 2;
+        final int[] stamp = {epoch, epoch + 1};
+        // Frontier of side 0 is queue[head[0], tail[0]); side 1 mirrors it
+        // at the back of the queue, as queue[tail[1] + 1, head[1]].
+        final int[] head = {0, queue.length - 1};
+        final int[] tail = {1, queue.length - 2};
+        final int[] level = {0, 0};
+        final int[] step = {1, -1};
+        seen[s] = stamp[0];
+        seen[t] = stamp[1];
+        parent[s] = s;
+        parent[t] = t;
+        queue[0] = s;
+        queue[queue.length - 1] = t;
+        int meetFrom = -1, meetTo = -1, ties = 0;
+        while (head[0] != tail[0] && head[1] != tail[1]) {
+            token.check();
+            final int side = chooseSide(head, tail);
+            final int mine = stamp[side], theirs = stamp[1 - side];
+            final int levelEnd = tail[side];
+            int next = tail[side];
+            for (int f = head[side]; f != levelEnd; f += step[side]) {
+                final int u = queue[f];
+                final int begin = links.begin(u), end = links.end(u);
+                final int degree = end - begin;
+                final int shift = random == null || degree == 0 ? 0 : random.nextInt(degree);
+                for (int k = 0, i = begin + shift; k < degree; ++k) {
+                    final int w = links.target(i);
+                    if (++i == end) {
+                        i = begin;
+                    }
+                    if (seen[w] == theirs) {
+                        if (ties++ == 0 || random != null && random.nextInt(ties) == 0) {
+                            meetFrom = side == 0 ? u : w;
+                            meetTo = side == 0 ? w : u;
+                        }
+                    } else if (seen[w] != mine) {
+                        seen[w] = mine;
+                        parent[w] = u;
+                        queue[next] = w;
+                        next += step[side];
+                    }
+                }
+                if (ties > 0 && random == null) {
+                    break;
+                }
+            }
+            visited += Math.abs(next - levelEnd);
+            if (ties > 0) {
+                return join(meetFrom, meetTo, level[0] + level[1] + 1);
+            }
+            head[side] = levelEnd;
+            tail[side] = next;
+            ++level[side];
+        }
+        return null;
+    }
+
+    /**
+     * Measures the distance from s to t, looking only for paths shorter than
+     * limit. A node w reached at level k on one side is dropped when
+     * k + lowerBound(w, other end) shows it cannot lie on such a path.
+     * @param lowerBound Never more than the distance between its arguments
+     * @param token Checked before every level
+     * @return The distance, limit if no shorter path exists, or -1 if limit
+     * is Integer.MAX_VALUE and t cannot be reached
+     */
+    int distance(int s, int t, int limit, IntBinaryOperator lowerBound, CancellationToken token) {
+        startStats(s == t ? 1 : 2);
+        if (s == t) {
+            return 0;
+        }
+        if (epoch >= Integer.MAX_VALUE - 2) {
+            Arrays.fill(seen, 0);
+            epoch = 0;
+        }
+        epoch += 2;
+        final int[] ends = {s, t};
+        final int[] stamp = {epoch, epoch + 1};
+        final int[] head = {0, queue.length - 1};
+        final int[] tail = {1, queue.length - 2};
+        final int[] level = {0, 0};
+        final int[] step = {1, -1};
+        seen[s] = stamp[0];
+        seen[t] = stamp[1];
+        queue[0] = s;
+        queue[queue.length - 1] = t;
+        while (head[0] != tail[0] && head[1] != tail[1] && level[0] + level[1] + 1 < limit) {
+            token.check();
+            final int side = chooseSide(head, tail);
+            final int mine = stamp[side], theirs = stamp[1 - side], target = ends[1 - side];
+            final int levelEnd = tail[side];
+            int next = tail[side];
+            for (int f = head[side]; f != levelEnd; f += step[side]) {
+                final int u = queue[f];
+                for (int i = links.begin(u), end = links.end(u); i < end; ++i) {
+                    final int w = links.target(i);
+                    if (seen[w] == theirs) {
+                        visited += Math.abs(next - levelEnd);
+                        return Math.min(level[0] + level[1] + 1, limit);
+                    }
+                    if (seen[w] != mine && (long) level[side] + 1 + lowerBound.applyAsInt(w, target) < limit) {
+                        seen[w] = mine;
+                        queue[next] = w;
+                        next += step[side];
+                    }
+                }
+            }
+            visited += Math.abs(next - levelEnd);
+            head[side] = levelEnd;
+            tail[side] = next;
+            ++level[side];
+        }
+        return limit == Integer.MAX_VALUE ? -1 : limit;
+    }
+
+    int visited() {
+        return visited;
+    }
+
+    long scanned() {
+        return scanned;
+    }
+
+    int maxFrontier() {
+        return maxFrontier;
+    }
+
+    private void startStats(int queued) {
+        visited = queued;
+        scanned = 0;
+        maxFrontier = 1;
+    }
+
+    /**
+     * @return The side with fewer edges to scan in its next level, counting
+     * those edges as scanned
+     */
+    private int chooseSide(int[] head, int[] tail) {
+        final long forward = frontierEdges(head[0], tail[0], 1), backward = frontierEdges(head[1], tail[1], -1);
+        final int side = forward <= backward ? 0 : 1;
+        scanned += Math.min(forward, backward);
+        maxFrontier = Math.max(maxFrontier, Math.abs(tail[side] - head[side]));
+        return side;
+    }
+
+    private long frontierEdges(int from, int to, int step) {
+        long edges = 0;
+        for (int f = from; f != to; f += step) {
+            edges += links.degree(queue[f]);
+        }
+        return edges;
+    }
+
+    private int[] join(int from, int to, int length) {
+        final int[] path = new int[length + 1];
+        int i = 0;
+        for (int cur = from; ; cur = parent[cur]) {
+            path[i++] = cur;
+            if (parent[cur] == cur) {
+                break;
+            }
+        }
+        for (int l = 0, r = i - 1; l < r; ++l, --r) {
+            final int tmp = path[l];
+            path[l] = path[r];
+            path[r] = tmp;
+        }
+        for (int cur = to; ; cur = parent[cur]) {
+            path[i++] = cur;
+            if (parent[cur] == cur) {
+                break;
+            }
+        }
+        return path;
+    }
+}
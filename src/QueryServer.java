@@ -0,0 +1,336 @@
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Headless HTTP front end answering link, strongest-tie, neighbor, degree,
+ * completion and statistics queries as JSON. Every request is answered from
+ * one shared ActorsNetwork, whose queries are safe to run concurrently.
+ * <p>
+ * Requests run on a fixed pool of workers rather than a thread each: path
+ * queries are CPU bound, and every concurrent one holds graph-sized search
+ * buffers, so more threads than cores would only add memory and contention.
+ * Up to "actors.server.pending" requests may wait for a worker; beyond
+ * that, requests are answered 503 right away by a separate thread instead
+ * of queueing without bound. Should that thread fall "actors.server.shedding"
+ * requests behind too, further ones are dropped by closing their connection
+ * unanswered. /metrics reports admission counters and the latency
+ * distribution of every endpoint.
+ */
+final class QueryServer {
+    static final private Path SNAPSHOT = Paths.get(System.getProperty("actors.snapshot", "actors.snapshot"));
+    static final private int THREADS = Integer.getInteger("actors.server.threads",
+            Runtime.getRuntime().availableProcessors());
+    static final private int PENDING = Integer.getInteger("actors.server.pending", 1024);
+    static final private int SHEDDING = Integer.getInteger("actors.server.shedding", 256);
+    static final private int NEIGHBOR_LIMIT = 100;
+    static final private int COMPLETE_LIMIT = 10;
+    /**
+     * Set while the shedding thread runs a request that was not admitted.
+     */
+    static final private ThreadLocal<Boolean> SHED = ThreadLocal.withInitial(() -> false);
+    /**
+     * Set while the server's own thread runs a request that not even the
+     * shedding thread could take.
+     */
+    static final private ThreadLocal<Boolean> DROP = ThreadLocal.withInitial(() -> false);
+
+    private interface Endpoint {
+        Object answer(Map<String, String> params);
+    }
+
+    private final ActorsNetwork g;
+    private final ObjectMapper json = new ObjectMapper();
+    private final HttpServer server;
+    private final ExecutorService workers;
+    private final ExecutorService shedder;
+    private final int capacity;
+    private final Semaphore admitted;
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final Map<String, LatencyHistogram> latencies = new LinkedHashMap<>();
+
+    /**
+     * @param threads Requests answered at once
+     * @param pending Admitted requests that may wait for a worker
+     */
+    QueryServer(ActorsNetwork g, InetSocketAddress address, int threads, int pending) throws IOException {
+        this.g = g;
+        capacity = threads + pending;
+        admitted = new Semaphore(capacity);
+        workers = Executors.newFixedThreadPool(threads);
+        shedder = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(SHEDDING),
+                (task, executor) -> {
+                    dropped.increment();
+                    DROP.set(true);
+                    try {
+                        task.run();
+                    } finally {
+                        DROP.set(false);
+                    }
+                });
+        server = HttpServer.create(address, capacity);
+        server.setExecutor(task -> {
+            if (admitted.tryAcquire()) {
+                workers.execute(() -> {
+                    try {
+                        task.run();
+                    } finally {
+                        admitted.release();
+                    }
+                });
+            } else {
+                rejected.increment();
+                shedder.execute(() -> {
+                    SHED.set(true);
+                    try {
+                        task.run();
+                    } finally {
+                        SHED.set(false);
+                    }
+                });
+            }
+        });
+        register("/link", this::link);
+        register("/strongest", this::strongest);
+        register("/neighbors", this::neighbors);
+        register("/degree", this::degree);
+        register("/complete", this::complete);
+        register("/stats", params -> stats());
+        register("/metrics", params -> metrics());
+    }
+
+    void start() {
+        server.start();
+    }
+
+    void stop() {
+        server.stop(0);
+        workers.shutdown();
+        shedder.shutdown();
+    }
+
+    int port() {
+        return server.getAddress().getPort();
+    }
+
+    private void register(String path, Endpoint endpoint) {
+        final LatencyHistogram latency = new LatencyHistogram();
+        latencies.put(path, latency);
+        server.createContext(path, exchange -> {
+            if (DROP.get()) {
+                // Closing before any response is sent drops the connection
+                exchange.close();
+                return;
+            }
+            final long start = System.nanoTime();
+            try {
+                if (SHED.get()) {
+                    exchange.getResponseHeaders().set("Retry-After", "1");
+                    respond(exchange, 503, error("Too many requests in flight"));
+                } else if (!"GET".equals(exchange.getRequestMethod())) {
+                    respond(exchange, 405, error("Only GET is supported"));
+                } else {
+                    respond(exchange, 200, endpoint.answer(parameters(exchange.getRequestURI().getRawQuery())));
+                }
+            } catch (NoSuchElementException e) {
+                respond(exchange, 404, error(e.getMessage()));
+            } catch (IllegalArgumentException e) {
+                respond(exchange, 400, error(e.getMessage()));
+            } catch (RuntimeException e) {
+                respond(exchange, 500, error(String.valueOf(e)));
+            } finally {
+                exchange.close();
+                if (!SHED.get()) {
+                    latency.record((System.nanoTime() - start) / 1000);
+                }
+            }
+        });
+    }
+
+    private void respond(HttpExchange exchange, int status, Object body) throws IOException {
+        final byte[] bytes = json.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static Map<String, Object> error(String message) {
+        return Collections.singletonMap("error", message);
+    }
+
+    private static Map<String, String> parameters(String query) {
+        final Map<String, String> params = new HashMap<>();
+        if (query == null) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            final int eq = pair.indexOf('=');
+            try {
+                params.put(URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), "UTF-8"),
+                        eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+            } catch (UnsupportedEncodingException e) {
+                throw new AssertionError(e);
+            }
+        }
+        return params;
+    }
+
+    private static String required(Map<String, String> params, String key) {
+        final String value = params.get(key);
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException("Missing parameter " + key);
+        }
+        return value;
+    }
+
+    private static int limit(Map<String, String> params, int fallback) {
+        final String value = params.get("limit");
+        final int limit = value == null ? fallback : Integer.parseInt(value);
+        if (limit < 0) {
+            throw new IllegalArgumentException("Negative limit");
+        }
+        return limit;
+    }
+
+    private int actor(Map<String, String> params, String key) {
+        final String name = required(params, key);
+        if (!g.exists(name)) {
+            final String hint = Arrays.stream(g.suggest(name, false, 3))
+                    .mapToObj(g::getName)
+                    .collect(Collectors.joining(", "));
+            throw new NoSuchElementException("No actor named " + name
+                    + (hint.isEmpty() ? "" : ", did you mean " + hint + "?"));
+        }
+        return g.getID(name);
+    }
+
+    private List<String> names(int[] ids) {
+        return Arrays.stream(ids).mapToObj(g::getName).collect(Collectors.toList());
+    }
+
+    private Object link(Map<String, String> params) {
+        final int from = actor(params, "from"), to = actor(params, "to");
+        final Util.Pair<List<Integer>, List<String>> path = g.shortestPathWithMovies(from, to, false);
+        final Map<String, Object> ret = new LinkedHashMap<>();
+        ret.put("from", g.getName(from));
+        ret.put("to", g.getName(to));
+        ret.put("distance", path.first.size() - 1);
+        ret.put("path", path.first.stream().map(g::getName).collect(Collectors.toList()));
+        ret.put("movies", path.second);
+        return ret;
+    }
+
+    private Object strongest(Map<String, String> params) {
+        final int from = actor(params, "from"), to = actor(params, "to");
+        final Util.Pair<List<Integer>, List<Integer>> path = g.strongestPath(from, to);
+        final Map<String, Object> ret = new LinkedHashMap<>();
+        ret.put("from", g.getName(from));
+        ret.put("to", g.getName(to));
+        ret.put("path", path.first.stream().map(g::getName).collect(Collectors.toList()));
+        ret.put("sharedMovies", path.second);
+        return ret;
+    }
+
+    private Object neighbors(Map<String, String> params) {
+        final int u = actor(params, "actor");
+        final int[] coStars = g.getNeighbors(u);
+        final EgoNetwork.TopK top = new EgoNetwork.TopK(Math.min(limit(params, NEIGHBOR_LIMIT), coStars.length));
+        for (int v : coStars) {
+            top.offer(g.getDegree(v), v);
+        }
+        final int[] neighbors = new int[top.drain()];
+        for (int i = 0; i < neighbors.length; ++i) {
+            neighbors[i] = top.next();
+        }
+        final Map<String, Object> ret = new LinkedHashMap<>();
+        ret.put("actor", g.getName(u));
+        ret.put("degree", g.getDegree(u));
+        ret.put("neighbors", names(neighbors));
+        return ret;
+    }
+
+    private Object degree(Map<String, String> params) {
+        final int u = actor(params, "actor");
+        final Map<String, Object> ret = new LinkedHashMap<>();
+        ret.put("actor", g.getName(u));
+        ret.put("degree", g.getDegree(u));
+        ret.put("zScore", g.getActorStDev(u));
+        return ret;
+    }
+
+    private Object complete(Map<String, String> params) {
+        final String prefix = required(params, "prefix");
+        final int limit = limit(params, COMPLETE_LIMIT);
+        int[] ids = g.complete(prefix, limit);
+        if (ids.length == 0) {
+            ids = g.suggest(prefix, true, limit);
+        }
+        final Map<String, Object> ret = new LinkedHashMap<>();
+        ret.put("prefix", prefix);
+        ret.put("names", names(ids));
+        return ret;
+    }
+
+    private Object stats() {
+        final DegreeStats stats = g.degreeStats();
+        final Map<String, Object> ret = new LinkedHashMap<>();
+        ret.put("actors", g.getSize());
+        ret.put("movies", g.getMovieCount());
+        ret.put("averageDegree", stats.mean());
+        ret.put("degreeStDev", stats.stDev());
+        ret.put("medianDegree", stats.percentile(50));
+        ret.put("p99Degree", stats.percentile(99));
+        ret.put("maxDegree", stats.maxDegree());
+        ret.put("components", g.components().count());
+        ret.put("giantComponent", g.getSize() == 0 ? 0 : g.components().size(0));
+        return ret;
+    }
+
+    private Object metrics() {
+        final Map<String, Object> endpoints = new LinkedHashMap<>();
+        latencies.forEach((path, latency) -> {
+            final Map<String, Object> m = new LinkedHashMap<>();
+            m.put("count", latency.count());
+            m.put("meanMicros", latency.mean());
+            m.put("p50Micros", latency.percentile(50));
+            m.put("p90Micros", latency.percentile(90));
+            m.put("p99Micros", latency.percentile(99));
+            m.put("maxMicros", latency.max());
+            endpoints.put(path, m);
+        });
+        final Map<String, Object> ret = new LinkedHashMap<>();
+        ret.put("inFlight", capacity - admitted.availablePermits());
+        ret.put("capacity", capacity);
+        ret.put("rejected", rejected.sum());
+        ret.put("dropped", dropped.sum());
+        ret.put("endpoints", endpoints);
+        return ret;
+    }
+
+    /**
+     * Serves the network on the port given as the only argument, 8080 by
+     * default.
+     */
+    public static void main(String[] args) throws IOException {
+        final int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        final ActorsNetwork g = new DataProcessing().loadNetwork(SNAPSHOT);
+        final QueryServer server = new QueryServer(g, new InetSocketAddress(port), THREADS, PENDING);
+        server.start();
+        System.out.println("Serving " + g.getSize() + " actors on port " + server.port());
+    }
+}
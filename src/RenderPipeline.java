@@ -0,0 +1,65 @@
+import org.graphstream.graph.Graph;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Stages mutations of the displayed graph and applies them in batches.
+ * flush() spreads the batches over an animation budget, at most one per
+ * frame, so how long an expansion takes to appear depends on the budget
+ * rather than on how many edges it adds; a budget of 0 applies everything
+ * in one go. Not thread safe: staging and flushing belong to the thread
+ * that owns the graph.
+ */
+final class RenderPipeline {
+    private static final long FRAME_NANOS = TimeUnit.SECONDS.toNanos(1) / 60;
+    private final Graph network;
+    private final Queue<Consumer<Graph>> staged = new ArrayDeque<>();
+
+    RenderPipeline(Graph network) {
+        this.network = network;
+    }
+
+    void stage(Consumer<Graph> mutation) {
+        staged.add(mutation);
+    }
+
+    int pending() {
+        return staged.size();
+    }
+
+    /**
+     * Applies every staged mutation, dropping the rest if token is cancelled
+     * between batches.
+     * @param budgetMs How long the mutations may take to appear
+     */
+    void flush(long budgetMs, CancellationToken token) {
+        try {
+            final long budget = TimeUnit.MILLISECONDS.toNanos(budgetMs);
+            final int batches = (int) Math.max(1, Math.min(staged.size(), budget / FRAME_NANOS));
+            final int perBatch = (staged.size() + batches - 1) / batches;
+            final long interval = budget / batches;
+            long next = System.nanoTime();
+            while (!staged.isEmpty()) {
+                token.check();
+                for (int i = 0; i < perBatch && !staged.isEmpty(); ++i) {
+                    staged.poll().accept(network);
+                }
+                next += interval;
+                final long wait = next - System.nanoTime();
+                if (!staged.isEmpty() && wait > 0) {
+                    try {
+                        TimeUnit.NANOSECONDS.sleep(wait);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
+        } finally {
+            staged.clear();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ * Interns names decoded straight from a parser's character buffer, so each
+ * distinct name is allocated once however many casts list it. Looking up a
+ * name already present takes no lock and allocates nothing; a new name locks
+ * one of SEGMENTS segments, chosen by hash, while it is inserted. One table
+ * is shared by all the workers of an ingest.
+ */
+final class SymbolTable {
+    private static final int SEGMENTS = 64;
+    private static final int INITIAL_CAPACITY = 1 << 10;
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    SymbolTable() {
+        for (int i = 0; i < SEGMENTS; ++i) {
+            segments[i] = new Segment();
+        }
+    }
+
+    /**
+     * @return The one String equal to chars[offset, offset + length)
+     */
+    String intern(char[] chars, int offset, int length) {
+        int hash = 0;
+        for (int i = offset; i < offset + length; ++i) {
+            hash = 31 * hash + chars[i];
+        }
+        final Segment segment = segments[(hash ^ hash >>> 16) & (SEGMENTS - 1)];
+        final String found = find(segment.table, hash, chars, offset, length);
+        return found != null ? found : segment.insert(hash, chars, offset, length);
+    }
+
+    /**
+     * @return The number of distinct names interned
+     */
+    int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.count;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Probes linearly from the slot of hash, skipping the bits that chose
+     * the segment.
+     */
+    private static String find(String[] table, int hash, char[] chars, int offset, int length) {
+        final int mask = table.length - 1;
+        for (int slot = (hash >>> 6) & mask; ; slot = (slot + 1) & mask) {
+            final String s = table[slot];
+            if (s == null) {
+                return null;
+            }
+            if (s.hashCode() == hash && equal(s, chars, offset, length)) {
+                return s;
+            }
+        }
+    }
+
+    private static boolean equal(String s, char[] chars, int offset, int length) {
+        if (s.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; ++i) {
+            if (s.charAt(i) != chars[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class Segment {
+        /**
+         * Replaced whole when it grows, so readers always probe a complete
+         * table; slots are only ever filled, never cleared.
+         */
+        volatile String[] table = new String[INITIAL_CAPACITY];
+        int count = 0;
+
+        synchronized String insert(int hash, char[] chars, int offset, int length) {
+            final String found = find(table, hash, chars, offset, length);
+            if (found != null) {
+                return found;
+            }
+            final String s = new String(chars, offset, length);
+            if (2 * (count + 1) > table.length) {
+                final String[] grown = new String[table.length * 2];
+                for (String old : table) {
+                    if (old != null) {
+                        put(grown, old);
+                    }
+                }
+                put(grown, s);
+                table = grown;
+            } else {
+                put(table, s);
+            }
+            ++count;
+            return s;
+        }
+
+        private static void put(String[] table, String s) {
+            final int mask = table.length - 1;
+            int slot = (s.hashCode() >>> 6) & mask;
+            while (table[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = s;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+import javax.swing.*;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Runs the visualizer's queries off the event dispatch thread. Queries run
+ * concurrently on a shared pool, each with its own CancellationToken, and a
+ * query submitted under the key of one still running cancels it, so only
+ * the latest request of a kind survives. Their effects on the displayed
+ * graph run one at a time on a single thread, as the graph is not thread
+ * safe. Progress messages go to the EDT, coalesced so that a chatty query
+ * cannot flood it.
+ */
+final class TaskScheduler {
+    interface Query<T> {
+        T run(Task task);
+    }
+
+    interface Effect<T> {
+        void apply(T result, Task task);
+    }
+
+    final class Task {
+        final CancellationToken token = new CancellationToken();
+        private final String key;
+
+        private Task(String key) {
+            this.key = key;
+        }
+
+        /**
+         * Shows message in the status line unless the task was cancelled.
+         */
+        void progress(String message) {
+            if (!token.isCancelled()) {
+                post(message);
+            }
+        }
+    }
+
+    private final ExecutorService queries = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), TaskScheduler::daemon);
+    private final ExecutorService effects = Executors.newSingleThreadExecutor(TaskScheduler::daemon);
+    private final Map<String, Task> running = new ConcurrentHashMap<>();
+    private final AtomicReference<String> pendingStatus = new AtomicReference<>();
+    private final Consumer<String> status;
+
+    /**
+     * @param status Shows a message, always called on the EDT
+     */
+    TaskScheduler(Consumer<String> status) {
+        this.status = status;
+    }
+
+    private static Thread daemon(Runnable r) {
+        final Thread thread = new Thread(r);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    private void post(String message) {
+        if (pendingStatus.getAndSet(message) == null) {
+            SwingUtilities.invokeLater(() -> status.accept(pendingStatus.getAndSet(null)));
+        }
+    }
+
+    /**
+     * Runs query on the pool and then effect on the effect thread, skipping
+     * whatever is left once the task is cancelled or superseded.
+     * @param key Tasks with the same key supersede each other
+     */
+    <T> Task submit(String key, Query<T> query, Effect<T> effect) {
+        final Task task = new Task(key);
+        final Task previous = running.put(key, task);
+        if (previous != null) {
+            previous.token.cancel();
+        }
+        queries.execute(() -> {
+            try {
+                task.token.check();
+                final T result = query.run(task);
+                effects.execute(() -> {
+                    try {
+                        task.token.check();
+                        effect.apply(result, task);
+                    } catch (CancellationException ignored) {
+                    } catch (RuntimeException e) {
+                        fail(task, e);
+                    } finally {
+                        running.remove(key, task);
+                    }
+                });
+            } catch (CancellationException e) {
+                running.remove(key, task);
+            } catch (RuntimeException e) {
+                fail(task, e);
+                running.remove(key, task);
+            }
+        });
+        return task;
+    }
+
+    private void fail(Task task, RuntimeException e) {
+        e.printStackTrace();
+        task.progress(task.key + " failed: " + e.getMessage());
+    }
+
+    /**
+     * Runs action on the effect thread, after the effects already queued.
+     */
+    void apply(Runnable action) {
+        effects.execute(action);
+    }
+
+    /**
+     * Cancels every task that has not finished yet.
+     */
+    void cancelAll() {
+        running.values().forEach(t -> t.token.cancel());
+    }
+}
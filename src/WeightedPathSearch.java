@@ -0,0 +1,204 @@
+import java.util.Arrays;
+
+/**
+ * Dijkstra search for the path of strongest collaborations. A tie of w
+ * shared movies has strength w / (w + 1), so one movie counts 1/2 and ten
+ * count 10/11, and a path is as strong as the product of its ties.
+ * Maximizing that product means minimizing the sum of -log(strength), that
+ * is log(1 + 1/w) per hop, which is positive, so Dijkstra applies. The
+ * frontier is an indexed binary heap over primitive arrays with
+ * decrease-key, and only the entries a search touched are reset afterwards,
+ * so one instance serves many queries without reallocating.
+ */
+final class WeightedPathSearch {
+    interface Tie {
+        void accept(int coStar, int movies);
+    }
+
+    interface Ties {
+        /**
+         * Calls action with every distinct co-star of u and the number of
+         * movies they share.
+         */
+        void forEach(int u, Tie action);
+    }
+
+    private static final int SETTLED = -2;
+    private static final int UNSEEN = -1;
+    private final Ties ties;
+    private final double[] cost;
+    private final int[] parent;
+    private final int[] movies;
+    /**
+     * Heap position of every actor, or UNSEEN or SETTLED.
+     */
+    private final int[] position;
+    private final int[] heap;
+    private int heapSize = 0;
+    private int[] touched = new int[1 << 10];
+    private int touchedCount = 0;
+    /**
+     * Work done by the last search.
+     */
+    private int settled;
+    private long relaxed;
+    private int maxHeap;
+
+    WeightedPathSearch(int size, Ties ties) {
+        this.ties = ties;
+        cost = new double[size];
+        parent = new int[size];
+        movies = new int[size];
+        position = new int[size];
+        heap = new int[size];
+        Arrays.fill(cost, Double.POSITIVE_INFINITY);
+        Arrays.fill(position, UNSEEN);
+    }
+
+    /**
+     * @param token Checked every 1024 settled actors
+     * @return The actors on the strongest path from source to target,
+     * alternating with the movies shared on each hop, as in
+     * [source, w, actor, w, ..., target]; null if there is no path
+     */
+    int[] path(int source, int target, CancellationToken token) {
+        try {
+            touch(source);
+            cost[source] = 0;
+            push(source);
+            settled = 0;
+            relaxed = 0;
+            maxHeap = 1;
+            while (heapSize > 0) {
+                final int u = pop();
+                if (u == target) {
+                    ++settled;
+                    return trace(source, target);
+                }
+                if ((++settled & 1023) == 0) {
+                    token.check();
+                }
+                final double base = cost[u];
+                ties.forEach(u, (v, shared) -> relax(u, v, shared, base + Math.log1p(1.0 / shared)));
+            }
+            return null;
+        } finally {
+            reset();
+        }
+    }
+
+    int settled() {
+        return settled;
+    }
+
+    long relaxed() {
+        return relaxed;
+    }
+
+    int maxHeap() {
+        return maxHeap;
+    }
+
+    private void relax(int u, int v, int shared, double c) {
+        ++relaxed;
+        if (position[v] == SETTLED || c >= cost[v]) {
+            return;
+        }
+        if (position[v] == UNSEEN) {
+            touch(v);
+            cost[v] = c;
+            push(v);
+        } else {
+            cost[v] = c;
+            siftUp(position[v]);
+        }
+        parent[v] = u;
+        movies[v] = shared;
+    }
+
+    private int[] trace(int source, int target) {
+        int hops = 0;
+        for (int v = target; v != source; v = parent[v]) {
+            ++hops;
+        }
+        final int[] ret = new int[2 * hops + 1];
+        int i = ret.length - 1;
+        for (int v = target; v != source; v = parent[v]) {
+            ret[i--] = v;
+            ret[i--] = movies[v];
+        }
+        ret[0] = source;
+        return ret;
+    }
+
+    private void touch(int u) {
+        if (touchedCount == touched.length) {
+            touched = Arrays.copyOf(touched, touchedCount * 2);
+        }
+        touched[touchedCount++] = u;
+    }
+
+    private void reset() {
+        for (int i = 0; i < touchedCount; ++i) {
+            final int u = touched[i];
+            cost[u] = Double.POSITIVE_INFINITY;
+            position[u] = UNSEEN;
+        }
+        touchedCount = 0;
+        heapSize = 0;
+    }
+
+    private void push(int u) {
+        heap[heapSize] = u;
+        position[u] = heapSize;
+        siftUp(heapSize++);
+        maxHeap = Math.max(maxHeap, heapSize);
+    }
+
+    private int pop() {
+        final int top = heap[0];
+        position[top] = SETTLED;
+        if (--heapSize > 0) {
+            heap[0] = heap[heapSize];
+            position[heap[0]] = 0;
+            siftDown(0);
+        }
+        return top;
+    }
+
+    private void siftUp(int i) {
+        final int u = heap[i];
+        while (i > 0) {
+            final int p = (i - 1) >>> 1;
+            if (cost[heap[p]] <= cost[u]) {
+                break;
+            }
+            heap[i] = heap[p];
+            position[heap[i]] = i;
+            i = p;
+        }
+        heap[i] = u;
+        position[u] = i;
+    }
+
+    private void siftDown(int i) {
+        final int u = heap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && cost[heap[child + 1]] < cost[heap[child]]) {
+                ++child;
+            }
+            if (cost[heap[child]] >= cost[u]) {
+                break;
+            }
+            heap[i] = heap[child];
+            position[heap[i]] = i;
+            i = child;
+        }
+        heap[i] = u;
+        position[u] = i;
+    }
+}
@@ -1,8 +1,23 @@
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.CancellationException;
 
 import static org.junit.Assert.*;
 
@@ -13,23 +28,11 @@ public class NetworkTest {
     public static void init() {
         DataProcessing process = new DataProcessing();
         try {
-            process.acquireData();
+            g = process.loadNetwork(Paths.get(System.getProperty("actors.snapshot", "actors.snapshot")));
         } catch (IOException e) {
             e.printStackTrace();
             fail();
         }
-        final List<String[]> casts = process.getAllCasts();
-        final Set<String> set = new HashSet<>();
-        casts.forEach(l -> set.addAll(Arrays.asList(l)));
-
-        g = new ActorsNetwork(set);
-        casts.forEach(c -> {
-            for (int i = 0; i < c.length; ++i) {
-                for (int j = i + 1; j < c.length; ++j) {
-                    g.addEdge(c[i], c[j]);
-                }
-            }
-        });
         System.out.println(g.getSize());
     }
 
@@ -40,6 +43,98 @@ public class NetworkTest {
         System.out.println(g.getName(diameter.second));
     }
 
+    @Test
+    public void testExactDiameter() {
+        Util.Pair<Integer, Integer> diameter = g.getExactDiameter((runs, lower, upper) -> {
+        });
+        final int length = g.shortestPath(diameter.first, diameter.second).size() - 1;
+        System.out.println(g.getName(diameter.first) + " to " + g.getName(diameter.second) + ": " + length);
+        Util.Pair<Integer, Integer> sampled = g.getDiameter();
+        assertTrue(g.shortestPath(sampled.first, sampled.second).size() - 1 <= length);
+    }
+
+    @Test(expected = CancellationException.class)
+    public void cancelledDiameter() {
+        final CancellationToken token = new CancellationToken();
+        g.getExactDiameter((runs, lower, upper) -> token.cancel(), token);
+    }
+
+    @Test
+    public void baconNumbers() {
+        final int bacon = g.getID("Kevin Bacon");
+        final String[] actors = {"Ben Affleck", "Matt Damon", "Rainn Wilson", "Terry Crews"};
+        final int[] ids = Arrays.stream(actors).mapToInt(g::getID).toArray();
+        final int[] row = g.distanceRows(bacon)[0];
+        for (int i = 0; i < actors.length; ++i) {
+            System.out.println(actors[i] + " has Bacon number " + row[ids[i]]);
+            assertEquals(g.shortestPath(bacon, ids[i]).size() - 1, row[ids[i]]);
+        }
+        final long[][] histograms = g.distanceHistograms(ids);
+        for (int i = 0; i < actors.length; ++i) {
+            System.out.println(actors[i] + " distance histogram: " + Arrays.toString(histograms[i]));
+        }
+    }
+
+    @Test
+    public void landmarkDistances() throws IOException {
+        final LandmarkIndex index = LandmarkIndex.build(g, 16);
+        final String[] actors = {"Kevin Bacon", "Ben Affleck", "Matt Damon", "Rainn Wilson",
+                "Terry Crews", "Ermina Zaenah"};
+        for (String a : actors) {
+            for (String b : actors) {
+                final int u = g.getID(a), v = g.getID(b);
+                final int distance = g.distance(u, v);
+                assertEquals(distance, index.distance(u, v));
+                assertTrue(index.lowerBound(u, v) <= distance);
+                assertTrue(index.upperBound(u, v) >= distance);
+            }
+        }
+        final Path file = Files.createTempFile("landmarks", ".index");
+        try {
+            index.save(file, "tag");
+            assertNull(LandmarkIndex.load(file, g, "other"));
+            final LandmarkIndex loaded = LandmarkIndex.load(file, g, "tag");
+            assertArrayEquals(index.getLandmarks(), loaded.getLandmarks());
+            final int bacon = g.getID("Kevin Bacon"), crews = g.getID("Terry Crews");
+            assertEquals(index.upperBound(bacon, crews), loaded.upperBound(bacon, crews));
+            assertEquals(index.lowerBound(bacon, crews), loaded.lowerBound(bacon, crews));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void nameLookup() {
+        final int bacon = g.getID("Kevin Bacon");
+        assertEquals("Kevin Bacon", g.getName(bacon));
+        assertFalse(g.exists("Kevin Baco"));
+        assertTrue(Arrays.stream(g.complete("Kevin Ba", 5)).anyMatch(id -> id == bacon));
+        assertEquals(bacon, g.suggest("kevin bakon", false, 1)[0]);
+        assertEquals(bacon, g.suggest("Kevn Bac", true, 1)[0]);
+    }
+
+    @Test
+    public void queryServer() throws IOException {
+        final QueryServer server = new QueryServer(g, new InetSocketAddress("localhost", 0), 2, 16);
+        server.start();
+        try {
+            final JsonNode link = new ObjectMapper().readTree(new URL("http://localhost:" + server.port()
+                    + "/link?from=Kevin+Bacon&to=Tom+Cruise"));
+            assertEquals(g.distance(g.getID("Kevin Bacon"), g.getID("Tom Cruise")), link.get("distance").asInt());
+            assertEquals(link.get("distance").asInt() + 1, link.get("path").size());
+            System.out.println(link);
+            final JsonNode neighbors = new ObjectMapper().readTree(new URL("http://localhost:" + server.port()
+                    + "/neighbors?actor=Kevin+Bacon&limit=5"));
+            assertEquals(Math.min(5, g.getDegree(g.getID("Kevin Bacon"))), neighbors.get("neighbors").size());
+            for (int i = 1; i < neighbors.get("neighbors").size(); ++i) {
+                assertTrue(g.getDegree(g.getID(neighbors.get("neighbors").get(i - 1).asText()))
+                        >= g.getDegree(g.getID(neighbors.get("neighbors").get(i).asText())));
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
     @Test
     public void statAnalysis() {
         System.out.println("Average degree: " + g.averageDegree());
@@ -61,21 +156,431 @@ public class NetworkTest {
         System.out.println("Average degree: " + g.averageDegree());
         System.out.println("Degree standard deviation: " + g.graphStDev());
 
-        Iterator<Map.Entry<Double, Integer>> iter =
+        Iterator<Map.Entry<Double, List<Integer>>> iter =
                 g.actorStDevs().entrySet().iterator();
         double prev = -1000;
+        int actors = 0;
 
         while (iter.hasNext()) {
-            Map.Entry<Double, Integer> actor = iter.next();
-            System.out.println(g.getName(actor.getValue()) + " is " +
-                    actor.getKey() + " deviations from mean with degree " +
-                    g.getDegree(actor.getValue()));
-            if (actor.getKey() < prev) {
+            Map.Entry<Double, List<Integer>> group = iter.next();
+            int first = group.getValue().get(0);
+            System.out.println(g.getName(first) + " and " + (group.getValue().size() - 1) +
+                    " others are " + group.getKey() + " deviations from mean with degree " +
+                    g.getDegree(first));
+            if (group.getKey() < prev) {
                 throw new RuntimeException("Current actor has stdev " +
-                        actor.getKey() + " but previous had " + prev);
+                        group.getKey() + " but previous had " + prev);
             }
-            prev = actor.getKey();
+            prev = group.getKey();
+            actors += group.getValue().size();
+        }
+        assertEquals(g.getSize(), actors);
+    }
+
+    @Test
+    public void degreeStats() {
+        DegreeStats stats = g.degreeStats();
+        int[] top = stats.top(10);
+        for (int i = 1; i < top.length; ++i) {
+            assertTrue(g.getDegree(top[i - 1]) >= g.getDegree(top[i]));
+        }
+        assertEquals(stats.maxDegree(), g.getDegree(top[0]));
+        assertEquals(stats.maxDegree(), stats.percentile(100));
+        assertEquals(g.getSize(), stats.count(0, stats.maxDegree()));
+        int median = stats.percentile(50);
+        assertTrue(stats.count(0, median) * 2 >= g.getSize());
+        System.out.println("Median degree: " + median + ", 99th percentile: " + stats.percentile(99));
+    }
+
+    @Test
+    public void components() {
+        ComponentIndex components = g.components();
+        int actors = 0;
+        for (int c = 0; c < components.count(); ++c) {
+            assertTrue(c == 0 || components.size(c) <= components.size(c - 1));
+            actors += components.size(c);
+        }
+        assertEquals(g.getSize(), actors);
+        int bacon = g.getID("Kevin Bacon");
+        assertEquals(0, components.component(bacon));
+        if (components.count() > 1) {
+            int island = components.members(components.count() - 1)[0];
+            assertFalse(g.connected(bacon, island));
+            assertTrue(g.shortestPath(bacon, island).isEmpty());
+            assertEquals(-1, g.distance(bacon, island));
+        }
+        Util.Pair<Integer, Integer> sampled = g.getDiameter();
+        assertEquals(0, components.component(sampled.first));
+        System.out.println(components.count() + " components: " + g.componentSizes());
+    }
+
+    @Test
+    public void centrality() {
+        ActorsNetwork path = new ActorsNetwork.Builder()
+                .addMovie("First", new String[]{"A", "B"})
+                .addMovie("Second", new String[]{"B", "C"})
+                .buildBipartite();
+        Centrality.Result exact = path.centrality(0);
+        assertTrue(exact.exact());
+        assertEquals(1, exact.betweenness[path.getID("B")], 1e-9);
+        assertEquals(0, exact.betweenness[path.getID("A")], 1e-9);
+        assertEquals(2.0 / 3, exact.closeness[path.getID("A")], 1e-9);
+        assertEquals(1.5, exact.harmonic[path.getID("A")], 1e-9);
+
+        Centrality.Result sampled = g.centrality(64);
+        assertFalse(sampled.exact());
+        int[] top = Centrality.top(sampled.betweenness, 10);
+        for (int i = 1; i < top.length; ++i) {
+            assertTrue(sampled.betweenness[top[i - 1]] >= sampled.betweenness[top[i]]);
+        }
+        System.out.println("Top broker: " + g.getName(top[0]) + ", normalized betweenness "
+                + sampled.normalizedBetweenness(top[0]) + " +- " + sampled.error(0.95));
+    }
+
+    @Test
+    public void strongestPath() {
+        ActorsNetwork.Builder builder = new ActorsNetwork.Builder()
+                .addMovie("Once", new String[]{"A", "B"})
+                .addMovie("Again", new String[]{"B", "C", "B"});
+        for (int i = 0; i < 10; ++i) {
+            builder.addMovie("Series " + i, new String[]{"A", "D"})
+                    .addMovie("Sequel " + i, new String[]{"D", "E"})
+                    .addMovie("Remake " + i, new String[]{"E", "C"});
         }
+        for (ActorsNetwork ties : new ActorsNetwork[]{builder.build(), builder.buildBipartite()}) {
+            int a = ties.getID("A"), d = ties.getID("D");
+            assertEquals(2, ties.getDegree(a));
+            assertEquals(2, ties.getDegree(ties.getID("B")));
+            assertEquals(3, ties.shortestPath(a, ties.getID("C")).size());
+            Util.Pair<List<Integer>, List<Integer>> strongest = ties.strongestPath(a, ties.getID("C"));
+            assertEquals(Arrays.asList(a, d, ties.getID("E"), ties.getID("C")), strongest.first);
+            assertEquals(Arrays.asList(10, 10, 10), strongest.second);
+        }
+        int bacon = g.getID("Kevin Bacon"), cruise = g.getID("Tom Cruise");
+        Util.Pair<List<Integer>, List<Integer>> strongest = g.strongestPath(bacon, cruise);
+        assertEquals(bacon, (int) strongest.first.get(0));
+        assertEquals(strongest.first.size() - 1, strongest.second.size());
+        assertTrue(strongest.first.size() - 1 >= g.distance(bacon, cruise));
+    }
+
+    @Test
+    public void yearViews() throws IOException {
+        ActorsNetwork.Builder builder = new ActorsNetwork.Builder()
+                .addMovie("Late", 2000, new String[]{"A", "C"})
+                .addMovie("Early", 1990, new String[]{"A", "B"})
+                .addMovie("Middle", 1995, new String[]{"B", "C"})
+                .addMovie("Undated", new String[]{"C", "D"});
+        for (ActorsNetwork full : new ActorsNetwork[]{builder.build(), builder.buildBipartite()}) {
+            int a = full.getID("A"), c = full.getID("C"), d = full.getID("D");
+            assertEquals(-1, full.asOf(1994).distance(a, c));
+            assertEquals(2, full.asOf(1995).distance(a, c));
+            assertEquals(1, full.asOf(2000).distance(a, c));
+            assertEquals(0, full.asOf(2024).getDegree(d));
+            assertEquals(1, full.getDegree(d));
+            assertEquals(3, full.asOf(1992).components().count());
+            ActorsNetwork early = full.asOf(1995);
+            try {
+                assertEquals(Arrays.asList(1, 1), early.strongestPath(a, c).second);
+                assertTrue(full.isBipartite());
+            } catch (IllegalStateException e) {
+                assertFalse(full.isBipartite());
+            }
+            Path file = Files.createTempFile("view", ".snapshot");
+            try {
+                early.saveSnapshot(file, null);
+                assertTrue(full.isBipartite());
+                assertEquals(2, ActorsNetwork.loadSnapshot(file, null).distance(a, c));
+            } catch (IllegalArgumentException e) {
+                assertFalse(full.isBipartite());
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        }
+        int bacon = g.getID("Kevin Bacon"), cruise = g.getID("Tom Cruise");
+        ActorsNetwork previous = null;
+        for (int year = 1900; year <= 2030; year += 10) {
+            ActorsNetwork slice = g.asOf(year);
+            assertTrue(slice.getDegree(bacon) <= g.getDegree(bacon));
+            assertTrue(slice.graph().edgeCount() <= g.graph().edgeCount());
+            if (previous != null) {
+                assertTrue(previous.getDegree(bacon) <= slice.getDegree(bacon));
+                int before = previous.distance(bacon, cruise);
+                assertTrue(before == -1 || slice.distance(bacon, cruise) <= before);
+            }
+            previous = slice;
+        }
+        assertEquals(g.distance(bacon, cruise), previous.distance(bacon, cruise));
+    }
+
+    @Test
+    public void liveUpdates() throws IOException {
+        ActorsNetwork.Builder builder = new ActorsNetwork.Builder()
+                .addMovie("First", 1990, new String[]{"A", "B"})
+                .addMovie("Second", 1995, new String[]{"B", "C"});
+        for (ActorsNetwork old : new ActorsNetwork[]{builder.build(), builder.buildBipartite()}) {
+            int a = old.getID("A"), c = old.getID("C");
+            old.getDegree(a);
+            LiveNetwork live = new LiveNetwork(old);
+            ActorsNetwork next = live.apply(new ActorsNetwork.Builder()
+                    .addMovie("Third", 2000, new String[]{"C", "A", "D"})
+                    .addMovie("Fourth", 2001, new String[]{"A", "C"}));
+            // The compactor may already have replaced it with its compact copy
+            ActorsNetwork published = live.get();
+            assertTrue(published == next || published.graph().isCompact() && published.exists("D"));
+            assertEquals(2, old.distance(a, c));
+            assertFalse(old.exists("D"));
+            assertEquals(a, next.getID("A"));
+            assertEquals(1, next.distance(a, c));
+            assertEquals(2, next.strongestPath(a, c).second.get(0).intValue());
+            assertEquals(3, next.getDegree(a));
+            assertEquals(2, next.getDegree(next.getID("D")));
+            assertEquals(2, next.asOf(1999).distance(a, c));
+            ActorsNetwork compacted = next.compact();
+            assertTrue(compacted.graph().isCompact());
+            assertEquals(next.graph().edgeCount(), compacted.graph().edgeCount());
+            assertEquals(1, compacted.distance(a, compacted.getID("D")));
+        }
+        Path delta = Files.createTempFile("delta", ".json");
+        try {
+            Files.write(delta, ("{\"title\": \"Reunion\", \"year\": \"2025\", "
+                    + "\"cast\": [\"Kevin Bacon\", \"Newcomer Zzyzx\", \"Tom Cruise\"]}\n")
+                    .getBytes(StandardCharsets.UTF_8));
+            ActorsNetwork next = new LiveNetwork(g).apply(delta);
+            int bacon = next.getID("Kevin Bacon"), cruise = next.getID("Tom Cruise");
+            assertEquals(g.getSize() + 1, next.getSize());
+            assertEquals(g.getMovieCount() + 1, next.getMovieCount());
+            assertEquals(1, next.distance(bacon, cruise));
+            assertEquals(1, next.distance(bacon, next.getID("Newcomer Zzyzx")));
+            assertEquals(next.getID("Newcomer Zzyzx"), next.complete("Newcomer Zz", 1)[0]);
+            assertEquals(g.distance(g.getID("Kevin Bacon"), g.getID("Tom Cruise")),
+                    next.asOf(2024).distance(bacon, cruise));
+        } finally {
+            Files.delete(delta);
+        }
+    }
+
+    @Test
+    public void egoNetwork() {
+        ActorsNetwork.Builder builder = new ActorsNetwork.Builder()
+                .addMovie("First", 1990, new String[]{"A", "B", "C"})
+                .addMovie("Second", 1991, new String[]{"A", "B"})
+                .addMovie("Third", 1992, new String[]{"C", "D"})
+                .addMovie("Fourth", 1993, new String[]{"D", "E"});
+        for (ActorsNetwork small : new ActorsNetwork[]{builder.build(), builder.buildBipartite()}) {
+            int a = small.getID("A"), b = small.getID("B"), c = small.getID("C"), e = small.getID("E");
+            EgoNetwork ego = small.egoNetwork(a, 1);
+            assertArrayEquals(new int[]{a, b}, ego.nodes);
+            assertEquals(1, ego.links());
+            assertEquals(2, ego.weight[0]);
+            ego = small.egoNetwork(a, 2, 2, 10, 10, EgoNetwork.Rank.DEGREE, new int[]{e}, CancellationToken.NONE);
+            assertEquals(4, ego.nodes.length);
+            assertEquals(c, ego.nodes[1]);
+            assertEquals(5, ego.links());
+            assertEquals(a, ego.from[0]);
+            ego = small.egoNetwork(a, 2, 2, 10, 2, EgoNetwork.Rank.DEGREE, new int[0], CancellationToken.NONE);
+            assertEquals(2, ego.links());
+        }
+        int bacon = g.getID("Kevin Bacon");
+        int[] shown = g.getNeighbors(g.getID("Tom Cruise"));
+        EgoNetwork ego = g.egoNetwork(bacon, 2, 5, 20, Integer.MAX_VALUE, EgoNetwork.Rank.WEIGHT,
+                Arrays.copyOf(shown, Math.min(50, shown.length)), CancellationToken.NONE);
+        assertEquals(20, ego.nodes.length);
+        Set<Integer> known = new HashSet<>();
+        Map<Integer, Integer> pickedAt = new HashMap<>();
+        for (int i = 0; i < ego.nodes.length; ++i) {
+            known.add(ego.nodes[i]);
+            pickedAt.put(ego.nodes[i], i);
+        }
+        for (int u : Arrays.copyOf(shown, Math.min(50, shown.length))) {
+            known.add(u);
+        }
+        int expected = 0;
+        for (int i = 0; i < ego.nodes.length; ++i) {
+            for (int v : g.getNeighbors(ego.nodes[i])) {
+                if (known.contains(v) && pickedAt.getOrDefault(v, Integer.MAX_VALUE) > i) {
+                    ++expected;
+                }
+            }
+        }
+        assertEquals(expected, ego.links());
+        for (int i = 0; i < ego.links(); ++i) {
+            assertTrue(ego.weight[i] > 0);
+        }
+    }
+
+    @Test
+    public void communities() {
+        ActorsNetwork.Builder builder = new ActorsNetwork.Builder()
+                .addMovie("First", 1990, new String[]{"A", "B", "C"})
+                .addMovie("Second", 1991, new String[]{"D", "E", "F"})
+                .addMovie("Third", 1992, new String[]{"C", "D"});
+        for (ActorsNetwork small : new ActorsNetwork[]{builder.build(), builder.buildBipartite()}) {
+            Communities communities = small.communities();
+            assertEquals(2, communities.count());
+            int a = communities.community(small.getID("A")), d = communities.community(small.getID("D"));
+            assertNotEquals(a, d);
+            assertEquals(a, communities.community(small.getID("C")));
+            assertEquals(d, communities.community(small.getID("F")));
+            assertEquals(5.0 / 14, communities.modularity(), 1e-9);
+            CsrGraph summary = communities.summary();
+            assertEquals(1, summary.degree(a));
+            assertEquals(1, summary.weight(summary.begin(a)));
+        }
+        Communities communities = g.communities();
+        System.out.println(communities.count() + " communities, modularity " + communities.modularity());
+        assertTrue(communities.modularity() > 0.3);
+        CsrGraph summary = communities.summary();
+        assertEquals(communities.count(), summary.size());
+        long actors = 0;
+        for (int c = 0; c < communities.count(); ++c) {
+            actors += communities.size(c);
+            assertTrue(c == 0 || communities.size(c - 1) >= communities.size(c));
+            for (int i = summary.begin(c); i < summary.end(c); ++i) {
+                int d = summary.target(i);
+                assertNotEquals(c, d);
+                int back = Arrays.binarySearch(summary.neighbors(d), c);
+                assertTrue(back >= 0);
+                assertEquals(summary.weight(i), summary.weight(summary.begin(d) + back));
+            }
+        }
+        assertEquals(g.getSize(), actors);
+    }
+
+    @Test
+    public void untitledSnapshot() throws IOException {
+        ActorsNetwork untitled = new ActorsNetwork.Builder()
+                .addMovie(null, new String[]{"A", "B"})
+                .addMovie("", new String[]{"B", "C"})
+                .addMovie("Titled", new String[]{"C", "D"})
+                .buildBipartite();
+        Path file = Files.createTempFile("untitled", ".snapshot");
+        try {
+            untitled.saveSnapshot(file, "tag");
+            ActorsNetwork loaded = ActorsNetwork.loadSnapshot(file, "tag");
+            assertEquals(untitled.getMovieCount(), loaded.getMovieCount());
+            for (int m = 0; m < untitled.getMovieCount(); ++m) {
+                assertEquals(untitled.getMovieTitle(m), loaded.getMovieTitle(m));
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void offlineSnapshot() throws IOException {
+        Path dir = Files.createTempDirectory("offline");
+        Path data = dir.resolve("data.txt"), snapshot = dir.resolve("actors.snapshot");
+        try {
+            Files.write(data, Collections.singletonList("{\"title\": \"First\", \"cast\": [\"A\", \"B\"]}"),
+                    StandardCharsets.UTF_8);
+            ActorsNetwork built = new DataProcessing(data.toString()).loadNetwork(snapshot);
+            assertTrue(Files.exists(snapshot));
+            int port;
+            try (java.net.ServerSocket socket = new java.net.ServerSocket(0)) {
+                port = socket.getLocalPort();
+            }
+            DataProcessing offline = new DataProcessing("http://127.0.0.1:" + port + "/data.txt.bz2");
+            try {
+                offline.sourceTag();
+                fail();
+            } catch (IOException expected) {
+            }
+            ActorsNetwork loaded = offline.loadNetwork(snapshot);
+            assertEquals(built.getSize(), loaded.getSize());
+            assertEquals(1, loaded.distance(loaded.getID("A"), loaded.getID("B")));
+        } finally {
+            Files.deleteIfExists(snapshot);
+            Files.deleteIfExists(data);
+            Files.delete(dir);
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void repeatedAndFailingIngest() throws IOException {
+        Path file = Files.createTempFile("movies", ".txt");
+        try {
+            Files.write(file, Arrays.asList("{\"title\": \"First\", \"cast\": [\"A\", \"B\"]}",
+                    "{\"title\": \"Second\", \"cast\": [\"B\", \"C\"]}"), StandardCharsets.UTF_8);
+            DataProcessing process = new DataProcessing(file.toString());
+            for (int run = 0; run < 2; ++run) {
+                ActorsNetwork.Builder builder = new ActorsNetwork.Builder();
+                process.acquireData(builder);
+                assertEquals(3, builder.build().getSize());
+            }
+            try {
+                process.acquireData((title, year, cast) -> {
+                    throw new IllegalStateException(title);
+                });
+                fail();
+            } catch (IllegalStateException e) {
+                assertEquals("First", e.getMessage());
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void projectedIngest() throws IOException {
+        Path file = Files.createTempFile("movies", ".txt");
+        List<Object[]> movies = new ArrayList<>();
+        try {
+            Files.write(file, Arrays.asList(
+                    "{\"title\": \"First\", \"year\": \"1990-05-01\", \"cast\": [\"A\", \"B\"],"
+                            + " \"directors\": [\"X\"], \"companies\": [{\"name\": \"Y\"}]}",
+                    "{\"cast\": [\"B\", \"\\u0041\"], \"year\": 1995, \"title\": \"Second\"}"),
+                    StandardCharsets.UTF_8);
+            new DataProcessing(file.toString(), EnumSet.of(DataProcessing.Field.CAST))
+                    .acquireData((title, year, cast) -> movies.add(new Object[]{title, year, cast}));
+        } finally {
+            Files.delete(file);
+        }
+        assertEquals(2, movies.size());
+        assertNull(movies.get(0)[0]);
+        assertEquals(ActorsNetwork.UNKNOWN_YEAR, movies.get(1)[1]);
+        String[] first = (String[]) movies.get(0)[2], second = (String[]) movies.get(1)[2];
+        assertArrayEquals(new String[]{"B", "A"}, second);
+        assertSame(first[1], second[0]);
+        assertSame(first[0], second[1]);
+        SymbolTable names = new SymbolTable();
+        char[] chars = "Kevin Bacon Kevin Bacon".toCharArray();
+        for (int i = 0; i < 5000; ++i) {
+            assertEquals("n" + i, names.intern(("n" + i).toCharArray(), 0, ("n" + i).length()));
+        }
+        assertSame(names.intern(chars, 0, 11), names.intern(chars, 12, 11));
+        assertEquals(5001, names.size());
+    }
+
+    @Test
+    public void metrics() throws Exception {
+        int bacon = g.getID("Kevin Bacon"), cruise = g.getID("Tom Cruise");
+        Path file = Files.createTempFile("queries", ".jfr");
+        List<RecordedEvent> events;
+        try (Recording recording = new Recording()) {
+            recording.enable("nets150.Query");
+            recording.enable("nets150.Build");
+            recording.start();
+            g.shortestPath(bacon, cruise);
+            g.breadthFirstSearchWithLength(bacon, CancellationToken.NONE);
+            new ActorsNetwork.Builder().addMovie("Duet", 2000, new String[]{"A", "B"}).buildBipartite();
+            recording.stop();
+            recording.dump(file);
+            events = RecordingFile.readAllEvents(file);
+        } finally {
+            Files.delete(file);
+        }
+        RecordedEvent bfs = events.stream()
+                .filter(e -> "bfs".equals(e.getString("kind"))).findFirst().orElseThrow(AssertionError::new);
+        assertEquals(g.graph().size(), bfs.getLong("visitedNodes"), g.graph().size() / 2.0);
+        assertTrue(bfs.getLong("scannedEdges") > 0);
+        assertTrue(events.stream().anyMatch(e -> "path".equals(e.getString("kind"))));
+        assertTrue(events.stream().anyMatch(e -> "bipartite".equals(e.getString("kind")) && e.getInt("actors") == 2));
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(Metrics.NAME);
+        assertTrue((Long) server.getAttribute(name, "IngestedLines") > 0);
+        assertTrue((Long) server.getAttribute(name, "ScannedEdges") > 0);
+        assertTrue((Long) server.getAttribute(name, "Builds") > 0);
+        System.out.println(server.getAttribute(name, "MeanLatencyMillis"));
     }
 
     @Test
@@ -85,6 +590,11 @@ public class NetworkTest {
         System.out.println(degs.values());
     }
 
+    @Test(expected = IllegalArgumentException.class, timeout = 10000)
+    public void emptyDegBuckets() {
+        g.degBuckets(0);
+    }
+
     @Test
     public void printDegs() {
         System.out.println(g.sortedDegToName());